@@ -0,0 +1,19 @@
+# set java classpath
+# Try change the CLASSPATH separator symbol from colon ":" to semicolon ";"
+# on Windows.
+export CLASSPATH="."
+export CLASSPATH=${CLASSPATH}:"target/NERDemo-0.0.1-SNAPSHOT.jar"
+export CLASSPATH=${CLASSPATH}:"target/dependency/*"
+
+# run the throughput benchmark, e.g.
+#   ./Benchmark.sh -docs 2000 -baseline bench/baseline.properties bench
+# or, to compare micro-batching on short documents,
+#   ./Benchmark.sh -docs 5000 -sentences 1 -sentlen 12 -pipelines NERDemo,NERDemoBatch bench
+# or, to compare the console reports on large documents,
+#   ./Benchmark.sh -docs 50 -sentences 200 -pipelines NLPDemoXmiCas,NLPDemoXmiCasAsync bench
+# or, to compare the CPU time of the fan-out pipeline with the three demos,
+#   ./Benchmark.sh -docs 200 -pipelines NERDemo,ChunkerDemo,NLPDemoXmiCasQuiet,FanOutDemo bench
+# The cost of the console report alone, without the analysis engines, is
+# measured by the ReportBenchmark class, e.g.
+#   java -cp $CLASSPATH it.unitn.ainlp.bench.ReportBenchmark -docs 50 -sentences 200 > /dev/null
+java -cp $CLASSPATH it.unitn.ainlp.bench.ThroughputBenchmark "$@"
@@ -0,0 +1,148 @@
+package it.unitn.ainlp.app;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
+import static org.apache.uima.fit.factory.CollectionReaderFactory.createReaderDescription;
+import it.unitn.ainlp.chunker.app.ChunkerConllWriter;
+import it.unitn.ainlp.pipeline.FanOutPipeline;
+import it.unitn.ainlp.reader.CompressedTextReader;
+import it.unitn.ainlp.writer.ConllWriter;
+
+import java.io.File;
+
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.collection.CollectionReaderDescription;
+
+import de.tudarmstadt.ukp.dkpro.core.berkeleyparser.BerkeleyParser;
+import de.tudarmstadt.ukp.dkpro.core.io.text.TextReader;
+import de.tudarmstadt.ukp.dkpro.core.io.xmi.XmiWriter;
+import de.tudarmstadt.ukp.dkpro.core.languagetool.LanguageToolLemmatizer;
+import de.tudarmstadt.ukp.dkpro.core.opennlp.OpenNlpChunker;
+import de.tudarmstadt.ukp.dkpro.core.opennlp.OpenNlpNameFinder;
+import de.tudarmstadt.ukp.dkpro.core.opennlp.OpenNlpPosTagger;
+import de.tudarmstadt.ukp.dkpro.core.opennlp.OpenNlpSegmenter;
+
+/**
+ * Produces the outputs of the NERDemo, ChunkerDemo and NLPDemoXmiCas apps
+ * in a single run.
+ *
+ * The analysis shared by the three apps (segmentation, lemmatization,
+ * part-of-speech tagging and named entity recognition) is performed only
+ * once per document; then the CoNLL output is written to
+ * <i>destDir/conll</i> and the following branches run in parallel, each
+ * on its own copy of the document:
+ * <ol>
+ * <li>chunking and chunked CoNLL output, written to <i>destDir/chunk</i>;</li>
+ * <li>constituency parsing and XMI output, written to <i>destDir/xmi</i>.</li>
+ * </ol>
+ */
+public class FanOutDemo
+{
+    public static void main( String[] args ) throws Exception {
+
+    	Options opt = new Options();
+
+    	// add help option
+    	opt.addOption("h", false, "Print help for this application");
+
+    	opt.addOption("inflight", true, "Documents each branch may lag behind (default: 2)");
+
+    	BasicParser parser = new BasicParser();
+    	CommandLine cl;
+
+    	try {
+    		cl = parser.parse(opt, args);
+    	} catch (Exception e) {
+    		System.err.println("Parameters format error");
+    		return;
+    	}
+
+    	if (cl.getArgs().length != 2 || cl.hasOption('h')) {
+    		// print the help
+    		HelpFormatter f = new HelpFormatter();
+    		f.printHelp("FanOutDemo [option] text_file destDir", opt);
+    		return;
+    	}
+
+    	// get input text file
+    	String inputFile = cl.getArgs()[0];
+
+    	// get output directory
+    	String outputDir = cl.getArgs()[1];
+
+    	/*
+    	 * Read text from file passed in input, straight out of
+    	 * compressed files and archives if needed.
+    	 */
+    	CollectionReaderDescription reader = CompressedTextReader.accepts(inputFile)
+    			? createReaderDescription(CompressedTextReader.class,
+    					CompressedTextReader.PARAM_SOURCE_LOCATION, inputFile,
+    					CompressedTextReader.PARAM_LANGUAGE, "en")
+    			: createReaderDescription(TextReader.class,
+    					TextReader.PARAM_SOURCE_LOCATION, inputFile,
+    					TextReader.PARAM_LANGUAGE, "en");
+
+    	/*
+    	 * The analysis shared by all the branches.
+    	 */
+    	AnalysisEngineDescription shared = createEngineDescription(
+    			/*
+    			 * Perform tokenization and sentence boundary detection
+    			 * using OpenNLP.
+    			 */
+    			createEngineDescription(OpenNlpSegmenter.class),
+
+    			/*
+    			 * Perform lemmatization using !LanguageTool.
+    			 */
+    	        createEngineDescription(LanguageToolLemmatizer.class),
+
+    	        /*
+    	         * Perform part-of-speech tagging using OpenNLP.
+    	         */
+                createEngineDescription(OpenNlpPosTagger.class),
+
+                /*
+                 * Perform named entity recognition using OpenNLP.
+                 */
+                createEngineDescription(OpenNlpNameFinder.class,
+                        OpenNlpNameFinder.PARAM_VARIANT, "person"),
+                createEngineDescription(OpenNlpNameFinder.class,
+                        OpenNlpNameFinder.PARAM_VARIANT, "organization"),
+                createEngineDescription(OpenNlpNameFinder.class,
+                		OpenNlpNameFinder.PARAM_VARIANT, "location"));
+
+    	new FanOutPipeline(reader, shared)
+    			/*
+    			 * Write the result to disk in CoNLL format. The writer only
+    			 * reads the CAS, so it needs no copy of its own.
+    			 */
+    			.addSharedBranch(createEngineDescription(ConllWriter.class,
+    					ConllWriter.PARAM_TARGET_LOCATION, new File(outputDir, "conll").getPath()))
+
+    			/*
+    			 * Perform chunking using OpenNLP and write the result to
+    			 * disk in CoNLL format.
+    			 */
+    			.addBranch("chunk", createEngineDescription(
+    					createEngineDescription(OpenNlpChunker.class),
+    					createEngineDescription(ChunkerConllWriter.class,
+    							ChunkerConllWriter.PARAM_TARGET_LOCATION, new File(outputDir, "chunk").getPath())))
+
+    			/*
+    			 * Perform constituency parsing using Berkeley Parser and
+    			 * write the result in XMI format.
+    			 */
+    			.addBranch("xmi", createEngineDescription(
+    					createEngineDescription(BerkeleyParser.class,
+    							BerkeleyParser.PARAM_WRITE_PENN_TREE, true),
+    					createEngineDescription(XmiWriter.class,
+    							XmiWriter.PARAM_TARGET_LOCATION, new File(outputDir, "xmi").getPath())))
+
+    			.setInFlight(Integer.parseInt(cl.getOptionValue("inflight", "2")))
+    			.run();
+    }
+}
@@ -3,8 +3,16 @@ package it.unitn.ainlp.app;
 import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
 import static org.apache.uima.fit.factory.CollectionReaderFactory.createReaderDescription;
 import static org.apache.uima.fit.pipeline.SimplePipeline.runPipeline;
+import it.unitn.ainlp.pipeline.MicroBatchPipeline;
+import it.unitn.ainlp.reader.CompressedTextReader;
+import it.unitn.ainlp.watchdog.WatchdogPipeline;
 import it.unitn.ainlp.writer.ConllWriter;
+
+import java.io.File;
+
 import org.apache.commons.cli.*;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.collection.CollectionReaderDescription;
 import de.tudarmstadt.ukp.dkpro.core.io.text.TextReader;
 import de.tudarmstadt.ukp.dkpro.core.languagetool.LanguageToolLemmatizer;
 import de.tudarmstadt.ukp.dkpro.core.opennlp.OpenNlpNameFinder;
@@ -26,6 +34,16 @@ public class NERDemo
     	// add help option
     	opt.addOption("h", false, "Print help for this application");
     	
+    	// add micro-batching options
+    	opt.addOption("batch", true, "Tag up to this many documents at once (default: no batching)");
+    	opt.addOption("batchchars", true, "Maximum number of characters in a batch (default: 65536)");
+    	opt.addOption("latency", true, "Maximum time in ms a document waits for its batch (default: 1000)");
+    	
+    	// add watchdog options
+    	opt.addOption("budget", true, "Time budget in ms of a document (default: no watchdog)");
+    	opt.addOption("stagebudgetpersentence", true, "Time budget in ms of a stage per sentence of the document, as a whole: no single sentence is bounded (default: 5000)");
+    	opt.addOption("maxtokens", true, "Re-split sentences longer than this (default: 150)");
+    	
     	BasicParser parser = new BasicParser();
     	CommandLine cl;
     	
@@ -36,7 +54,21 @@ public class NERDemo
     		return;
     	}
     	
-    	if (args.length != 2 || cl.hasOption('h')) {
+    	// the batch bounds must be positive, the latency can't be negative
+    	int batchSize, batchChars;
+    	long latency;
+    	try {
+    		batchSize = Integer.parseInt(cl.getOptionValue("batch", "1"));
+    		batchChars = Integer.parseInt(cl.getOptionValue("batchchars", "65536"));
+    		latency = Long.parseLong(cl.getOptionValue("latency", "1000"));
+    	} catch (NumberFormatException e) {
+    		batchSize = 0;
+    		batchChars = 0;
+    		latency = -1;
+    	}
+    	
+    	if (cl.getArgs().length != 2 || cl.hasOption('h')
+    			|| batchSize < 1 || batchChars < 1 || latency < 0) {
     		// print the help
     		HelpFormatter f = new HelpFormatter();
     		f.printHelp("NERDemo [option] text_file destDir", opt);
@@ -44,51 +76,100 @@ public class NERDemo
     	}
     	
     	// get input text file 
-    	String inputFile = args[0];
+    	String inputFile = cl.getArgs()[0];
     	
     	// get output directory
-    	String outputDir = args[1];  
-    	    	
-    	// run a sequence of analysis engines on a text file
-    	runPipeline(
-    			/*
-    			 * Read text from file passed in input 
-    			 */
-                createReaderDescription(TextReader.class,
-                    TextReader.PARAM_SOURCE_LOCATION, inputFile, 
-    	            TextReader.PARAM_LANGUAGE, "en"),
-    					
-    			/* 
-    			 * Perform tokenization and sentence boundary detection 
-    			 * using OpenNLP. 
-    			 */
-    	        createEngineDescription(OpenNlpSegmenter.class),
-    			
-    			/*
-    			 * Perform lemmatization using !LanguageTool. 
-    			 */
-    	        createEngineDescription(LanguageToolLemmatizer.class),
-    	        
-    	        /*
-    	         * Perform part-of-speech tagging using OpenNLP.
-    	         */
-                createEngineDescription(OpenNlpPosTagger.class),
-    	        
-                /*
-                 * Perform named entity recognition using OpenNLP.
-                 */
-                createEngineDescription(OpenNlpNameFinder.class,
-                        OpenNlpNameFinder.PARAM_VARIANT, "person"),
-                createEngineDescription(OpenNlpNameFinder.class,
-                        OpenNlpNameFinder.PARAM_VARIANT, "organization"),
-                createEngineDescription(OpenNlpNameFinder.class, 
-                		OpenNlpNameFinder.PARAM_VARIANT, "location"),
+    	String outputDir = cl.getArgs()[1];  
+    	
+    	boolean batch = cl.hasOption("batch");
+    	boolean watchdog = cl.hasOption("budget");
+    	
+    	if (batch && watchdog) {
+    		System.err.println("Options -batch and -budget can't be used together");
+    		return;
+    	}
+    	
+    	/*
+    	 * Read text from file passed in input, straight out of
+    	 * compressed files and archives if needed.
+    	 */
+    	CollectionReaderDescription reader = CompressedTextReader.accepts(inputFile)
+    			? createReaderDescription(CompressedTextReader.class,
+    					CompressedTextReader.PARAM_SOURCE_LOCATION, inputFile,
+    					CompressedTextReader.PARAM_LANGUAGE, "en")
+    			: createReaderDescription(TextReader.class,
+    					TextReader.PARAM_SOURCE_LOCATION, inputFile, 
+    					TextReader.PARAM_LANGUAGE, "en");
+    	
+    	/* 
+    	 * Perform tokenization and sentence boundary detection 
+    	 * using OpenNLP. When documents are batched, each document 
+    	 * is segmented on its own.
+    	 */
+    	AnalysisEngineDescription segmenter = batch
+    			? createEngineDescription(OpenNlpSegmenter.class,
+    					OpenNlpSegmenter.PARAM_ZONE_TYPES, MicroBatchPipeline.ZONE_TYPE)
+    			: createEngineDescription(OpenNlpSegmenter.class);
+    	
+    	/*
+    	 * Perform lemmatization using !LanguageTool. 
+    	 */
+    	AnalysisEngineDescription lemmatizer = createEngineDescription(LanguageToolLemmatizer.class);
+    	
+    	/*
+    	 * Perform part-of-speech tagging using OpenNLP.
+    	 */
+    	AnalysisEngineDescription posTagger = createEngineDescription(OpenNlpPosTagger.class);
+    	
+    	/*
+    	 * Perform named entity recognition using OpenNLP.
+    	 */
+    	AnalysisEngineDescription persons = createEngineDescription(OpenNlpNameFinder.class,
+    			OpenNlpNameFinder.PARAM_VARIANT, "person");
+    	AnalysisEngineDescription organizations = createEngineDescription(OpenNlpNameFinder.class,
+    			OpenNlpNameFinder.PARAM_VARIANT, "organization");
+    	AnalysisEngineDescription locations = createEngineDescription(OpenNlpNameFinder.class, 
+    			OpenNlpNameFinder.PARAM_VARIANT, "location");
     	        
-                /*
-                 * Write the result to disk in CoNLL format. The results are
-                 * written to the directory stored in the outDir param
-                */
-                createEngineDescription(ConllWriter.class,
-                		ConllWriter.PARAM_TARGET_LOCATION, outputDir));
+    	/*
+    	 * Write the result to disk in CoNLL format. The results are
+    	 * written to the directory stored in the outDir param
+    	 */
+    	AnalysisEngineDescription writer = createEngineDescription(ConllWriter.class,
+    			ConllWriter.PARAM_TARGET_LOCATION, outputDir);
+    	
+    	if (watchdog) {
+    		// run each analysis engine under a time budget, logging 
+    		// the documents it degrades to watchdog.tsv
+    		new File(outputDir).mkdirs();
+    		new WatchdogPipeline(reader,
+    				createEngineDescription(segmenter, lemmatizer, posTagger,
+    						persons, organizations, locations),
+    				writer)
+    				.setDocumentBudget(Long.parseLong(cl.getOptionValue("budget")))
+    				.setStageBudgetPerSentence(Long.parseLong(cl.getOptionValue("stagebudgetpersentence", "5000")))
+    				.setMaxSentenceTokens(Integer.parseInt(cl.getOptionValue("maxtokens", "150")))
+    				.setLog(new File(outputDir, "watchdog.tsv"))
+    				.run();
+    	}
+    	else if (batch) {
+    		// run the taggers on batches of documents. The name finders 
+    		// carry adaptive features from sentence to sentence until the 
+    		// end of the CAS, so they run on each document on its own: 
+    		// otherwise the entities would depend on the other documents 
+    		// of the batch.
+    		new MicroBatchPipeline(reader,
+    				createEngineDescription(segmenter, lemmatizer, posTagger),
+    				createEngineDescription(persons, organizations, locations, writer))
+    				.setMaxDocuments(batchSize)
+    				.setMaxCharacters(batchChars)
+    				.setMaxLatency(latency)
+    				.run();
+    	}
+    	else {
+    		// run a sequence of analysis engines on a text file
+    		runPipeline(reader, segmenter, lemmatizer, posTagger,
+    				persons, organizations, locations, writer);
+    	}
     }
 }
@@ -2,24 +2,25 @@ package it.unitn.ainlp.app;
 
 import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
 import static org.apache.uima.fit.factory.CollectionReaderFactory.createReaderDescription;
-import static org.apache.uima.fit.util.JCasUtil.select;
-import static org.apache.uima.fit.util.JCasUtil.selectCovered;
+import it.unitn.ainlp.reader.CompressedTextReader;
+import it.unitn.ainlp.report.AsyncReportSink;
+import it.unitn.ainlp.report.NullReportSink;
+import it.unitn.ainlp.report.ReportSink;
+import it.unitn.ainlp.report.SampledReportSink;
+import it.unitn.ainlp.report.WriterReportSink;
+import it.unitn.ainlp.watchdog.WatchdogPipeline;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
 
 import org.apache.commons.cli.BasicParser;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.collection.CollectionReaderDescription;
 import org.apache.uima.fit.pipeline.JCasIterable;
 import org.apache.uima.jcas.JCas;
 
-import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
-import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
-import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
-import de.tudarmstadt.ukp.dkpro.core.api.syntax.type.PennTree;
 import de.tudarmstadt.ukp.dkpro.core.berkeleyparser.BerkeleyParser;
 import de.tudarmstadt.ukp.dkpro.core.io.text.TextReader;
 import de.tudarmstadt.ukp.dkpro.core.io.xmi.XmiWriter;
@@ -56,6 +57,16 @@ public class NLPDemoXmiCas
     	// add help option
     	opt.addOption("h", false, "Print help for this application");
     	
+    	// add report options
+    	opt.addOption("q", false, "Do not print the results");
+    	opt.addOption("sample", true, "Print the results of one document every n, n >= 1");
+    	opt.addOption("async", false, "Print the results on a background thread");
+    	
+    	// add watchdog options
+    	opt.addOption("budget", true, "Time budget in ms of a document (default: no watchdog)");
+    	opt.addOption("stagebudgetpersentence", true, "Time budget in ms of a stage per sentence of the document, as a whole: no single sentence is bounded (default: 5000)");
+    	opt.addOption("maxtokens", true, "Re-split sentences longer than this (default: 150)");
+    	
     	BasicParser parser = new BasicParser();
     	CommandLine cl;
     	
@@ -66,7 +77,15 @@ public class NLPDemoXmiCas
     		return;
     	}
     	
-    	if (args.length != 2 || cl.hasOption('h')) {
+    	// one document every n is printed, n must be positive
+    	int sample;
+    	try {
+    		sample = Integer.parseInt(cl.getOptionValue("sample", "1"));
+    	} catch (NumberFormatException e) {
+    		sample = 0;
+    	}
+    	
+    	if (cl.getArgs().length != 2 || cl.hasOption('h') || sample < 1) {
     		// print the help
     		HelpFormatter f = new HelpFormatter();
     		f.printHelp("NLPDemoXmiCas [option] text_file destDir", opt);
@@ -74,37 +93,33 @@ public class NLPDemoXmiCas
     	}
     	
     	// get input text file 
-    	String inputFile = args[0];
+    	String inputFile = cl.getArgs()[0];
     	
     	// get output directory
-    	String outputDir = args[1];  
+    	String outputDir = cl.getArgs()[1];  
     	    	
-    	// Assemble the pipeline by creating a new JCasIterable object.
-    	// JCasIterable implements iteration over the documents of
-    	// a collection.
-    	// Each element in the iterable is a JCas containing a single document.
-    	// The documents are read  by the TextReader and processed by the 
-    	// Analysis engines (e.g. OpenNlpSegmenter, LanguageToolLemmatizer, etc...).
-    	// In this case the iterable contains only a single JCas
-    	// corresponding to the document passed in input.
-    	JCasIterable pipeline = new JCasIterable(
-    			
-				/*
-				 * Read text from the file passed in input. 
-				 */
-				createReaderDescription(TextReader.class,
-						TextReader.PARAM_SOURCE_LOCATION, inputFile, 
-						TextReader.PARAM_LANGUAGE, "en"),
-    					
-				/**
-				 *	// Read text from a list of files.
-				 * 
-				 *  createReaderDescription(TextReader.class,
-				 *		TextReader.PARAM_SOURCE_LOCATION, "data",
-				 *		TextReader.PARAM_PATTERNS, new String[]{ "*.txt" }, 
-				 *		TextReader.PARAM_LANGUAGE, "en"),
-				 */
+    	/*
+    	 * Read text from the file passed in input, straight out of
+    	 * compressed files and archives if needed.
+    	 */
+    	CollectionReaderDescription reader = CompressedTextReader.accepts(inputFile)
+    			? createReaderDescription(CompressedTextReader.class,
+    					CompressedTextReader.PARAM_SOURCE_LOCATION, inputFile,
+    					CompressedTextReader.PARAM_LANGUAGE, "en")
+    			: createReaderDescription(TextReader.class,
+    					TextReader.PARAM_SOURCE_LOCATION, inputFile, 
+    					TextReader.PARAM_LANGUAGE, "en");
     					
+		/**
+		 *	// Read text from a list of files.
+		 * 
+		 *  createReaderDescription(TextReader.class,
+		 *		TextReader.PARAM_SOURCE_LOCATION, "data",
+		 *		TextReader.PARAM_PATTERNS, new String[]{ "*.txt" }, 
+		 *		TextReader.PARAM_LANGUAGE, "en"),
+		 */
+    	
+    	AnalysisEngineDescription analysis = createEngineDescription(
 				/* 
 				 * Perform tokenization and sentence boundary detection 
 				 * using OpenNLP. 
@@ -135,44 +150,64 @@ public class NLPDemoXmiCas
                  * Perform constituency parsing using Berkeley Parser.
                  */
                 createEngineDescription(BerkeleyParser.class,
-                		BerkeleyParser.PARAM_WRITE_PENN_TREE, true),
+                		BerkeleyParser.PARAM_WRITE_PENN_TREE, true));
     	        
-                /*
-                 * Write output in XMI format for inspection in 
-                 * UIMA CAS Visual Debugger.
-                 */
-                createEngineDescription(XmiWriter.class,
-                		XmiWriter.PARAM_TARGET_LOCATION, outputDir));
-                		//XmiWriter.PARAM_TYPE_SYSTEM_FILE, new File(outputDir, "TypeSystem.xml").toString()));
+    	/*
+    	 * Write output in XMI format for inspection in 
+    	 * UIMA CAS Visual Debugger.
+    	 */
+    	AnalysisEngineDescription writer = createEngineDescription(XmiWriter.class,
+    			XmiWriter.PARAM_TARGET_LOCATION, outputDir);
+    			//XmiWriter.PARAM_TYPE_SYSTEM_FILE, new File(outputDir, "TypeSystem.xml").toString()));
+    	
+    	// Assemble the pipeline by creating a new JCasIterable object.
+    	// JCasIterable implements iteration over the documents of
+    	// a collection.
+    	// Each element in the iterable is a JCas containing a single document.
+    	// The documents are read  by the TextReader and processed by the 
+    	// Analysis engines (e.g. OpenNlpSegmenter, LanguageToolLemmatizer, etc...).
+    	// In this case the iterable contains only a single JCas
+    	// corresponding to the document passed in input.
+    	// With the -budget option each analysis engine is run under a time
+    	// budget instead, logging the documents it degrades to watchdog.tsv.
+    	Iterable<JCas> pipeline;
+    	if (cl.hasOption("budget")) {
+    		new File(outputDir).mkdirs();
+    		pipeline = new WatchdogPipeline(reader, analysis, writer)
+    				.setDocumentBudget(Long.parseLong(cl.getOptionValue("budget")))
+    				.setStageBudgetPerSentence(Long.parseLong(cl.getOptionValue("stagebudgetpersentence", "5000")))
+    				.setMaxSentenceTokens(Integer.parseInt(cl.getOptionValue("maxtokens", "150")))
+    				.setLog(new File(outputDir, "watchdog.tsv"));
+    	}
+    	else {
+    		pipeline = new JCasIterable(reader, analysis, writer);
+    	}
+    	
+    	// Choose where the results are shown: by default they are printed
+    	// to the console through a large buffer, optionally on a background
+    	// thread so that the next document is processed in the meanwhile.
+    	ReportSink sink;
+    	if (cl.hasOption('q')) {
+    		sink = new NullReportSink();
+    	}
+    	else if (cl.hasOption("async")) {
+    		sink = new AsyncReportSink(WriterReportSink.console(), 16);
+    	}
+    	else {
+    		sink = WriterReportSink.console();
+    	}
+    	if (sample > 1) {
+    		sink = new SampledReportSink(sink, sample);
+    	}
     	
     	// Run and show results in console
-        for (JCas jcas : pipeline) {
-            for (Sentence sentence : select(jcas, Sentence.class)) {
-                System.out.printf("%n== Sentence ==%n");
-                System.out.printf("  %-16s %-10s %-10s %-10s %n", "TOKEN", "LEMMA", 
-                		"CPOS", "POS");
-                
-                // Print tokens, lemmas, chunk POSs ad POSs
-                for (Token token : selectCovered(Token.class, sentence)) {
-                    System.out.printf("  %-16s %-10s %-10s %-10s %n",
-                            token.getCoveredText(),
-                            token.getLemma() != null ? token.getLemma().getValue() : "",
-                            token.getPos().getClass().getSimpleName(),
-                            token.getPos().getPosValue());
-                }
-                	
-                // Print named entities 
-                System.out.printf("%n  -- Named Entities --%n");
-                System.out.printf("  %-16s %-10s%n", "ENTITY", "TOKENS");
-                for (NamedEntity ne : selectCovered(NamedEntity.class, sentence)) {
-                    System.out.printf("  %-16s %-10s%n", ne.getValue(), ne.getCoveredText());
-                }                
-               
-                // Print constituency-based parse trees in Penn format
-                System.out.printf("%n  -- PennTree --%n");
-                List<PennTree> trees = new ArrayList<PennTree>(selectCovered(PennTree.class, sentence));
-                System.out.printf("  %s%n%n", trees.get(0).getPennTree());
-            }
-        }
+    	try {
+    		for (JCas jcas : pipeline) {
+    			sink.report(jcas);
+    		}
+    	}
+    	finally {
+    		sink.close();
+    	}
     }
 }
@@ -0,0 +1,367 @@
+package it.unitn.ainlp.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Generates a synthetic English corpus that can be fed to the demo
+ * applications in order to measure their throughput.
+ *
+ * The corpus is fully determined by the seed, so two runs with the same
+ * parameters produce exactly the same files. Each document is written to
+ * its own <i>doc-NNNNNN.txt</i> file, one sentence per line (the same layout
+ * of <i>data/document.txt</i>). A <i>corpus.properties</i> manifest records
+ * the parameters and the number of documents, tokens and characters
+ * generated.
+ *
+ * The following properties of the corpus can be tuned:
+ * <ul>
+ * <li>the number of documents;</li>
+ * <li>the document length (mean number of sentences per document);</li>
+ * <li>the sentence length distribution (mean and standard deviation of the
+ *     number of tokens per sentence, plus the probability of a "runaway"
+ *     sentence ten times longer than the mean);</li>
+ * <li>the entity density (probability that a token starts a person,
+ *     organization or location mention);</li>
+ * <li>the duplication rate (probability that a document is an exact copy
+ *     of a previously generated one).</li>
+ * </ul>
+ */
+public class CorpusGenerator
+{
+	/** Name of the manifest file written in the corpus directory. */
+	public static final String MANIFEST = "corpus.properties";
+
+	public static final String KEY_DOCUMENTS = "documents";
+	public static final String KEY_TOKENS = "tokens";
+	public static final String KEY_CHARACTERS = "characters";
+
+	private static final String[] FIRST_NAMES = { "Pierre", "Rudolph", "James",
+		"Mary", "Anna", "John", "Laura", "Marco", "Elena", "David", "Sarah",
+		"Thomas", "Julia", "Robert", "Linda", "Paolo" };
+
+	private static final String[] LAST_NAMES = { "Vinken", "Agnew", "Talcott",
+		"Smith", "Rossi", "Johnson", "Miller", "Bianchi", "Brown", "Wilson",
+		"Moore", "Taylor", "Anderson", "Clark", "Lewis", "Walker" };
+
+	private static final String[] ORG_NAMES = { "Elsevier", "Lorillard",
+		"Consolidated Gold Fields", "Loews", "Hollingsworth & Vose",
+		"Dana-Farber", "Kent", "General Motors", "Micronite", "Western Union",
+		"National Cancer", "Pacific Mills", "Atlantic Holdings" };
+
+	private static final String[] ORG_SUFFIXES = { "Inc.", "Corp.", "Co.",
+		"PLC", "N.V.", "Institute", "Group" };
+
+	private static final String[] LOCATIONS = { "New York", "Boston",
+		"London", "Trento", "Paris", "West Groton", "Tokyo", "Chicago",
+		"Berlin", "Massachusetts", "Italy", "Canada", "Rome", "Madrid" };
+
+	private static final String[] DETERMINERS = { "the", "a", "this", "that",
+		"its", "their", "some", "every" };
+
+	private static final String[] ADJECTIVES = { "old", "new", "former",
+		"nonexecutive", "British", "industrial", "preliminary", "modest",
+		"high", "useful", "different", "striking", "recent", "large", "small",
+		"early", "unusual", "resilient", "public", "annual" };
+
+	private static final String[] NOUNS = { "board", "director", "chairman",
+		"group", "company", "percentage", "researchers", "workers", "fiber",
+		"filter", "cigarettes", "results", "problem", "amounts", "paper",
+		"factory", "contract", "deaths", "rate", "finding", "plant",
+		"substance", "information", "report", "market", "shares", "year",
+		"months", "team", "study" };
+
+	private static final String[] VERBS = { "join", "joined", "used", "caused",
+		"reported", "said", "makes", "stopped", "appear", "bring", "heard",
+		"studied", "led", "replaced", "sold", "worked", "died", "owned",
+		"announced", "expects", "agreed", "signed", "reached", "produced" };
+
+	private static final String[] PREPOSITIONS = { "of", "in", "with", "for",
+		"from", "to", "by", "among", "on", "at", "before", "after" };
+
+	private static final String[] CONJUNCTIONS = { "and", "but", "or", "while",
+		"although", "because" };
+
+	private final Random random;
+
+	private final int documents;
+
+	private final int sentencesPerDocument;
+
+	private final double sentenceLengthMean;
+
+	private final double sentenceLengthStdDev;
+
+	private final double runawayRate;
+
+	private final double entityDensity;
+
+	private final double duplicationRate;
+
+	public CorpusGenerator(long seed, int documents, int sentencesPerDocument,
+			double sentenceLengthMean, double sentenceLengthStdDev,
+			double runawayRate, double entityDensity, double duplicationRate) {
+		this.random = new Random(seed);
+		this.documents = documents;
+		this.sentencesPerDocument = sentencesPerDocument;
+		this.sentenceLengthMean = sentenceLengthMean;
+		this.sentenceLengthStdDev = sentenceLengthStdDev;
+		this.runawayRate = runawayRate;
+		this.entityDensity = entityDensity;
+		this.duplicationRate = duplicationRate;
+	}
+
+	/**
+	 * Add the corpus generation options to the given set of options.
+	 * The options can be read back with {@link #fromCommandLine(CommandLine)}.
+	 */
+	public static void addOptions(Options opt) {
+		opt.addOption("seed", true, "Random seed (default: 42)");
+		opt.addOption("docs", true, "Number of documents (default: 1000)");
+		opt.addOption("sentences", true,
+				"Mean number of sentences per document (default: 10)");
+		opt.addOption("sentlen", true,
+				"Mean number of tokens per sentence (default: 20)");
+		opt.addOption("sentsd", true,
+				"Standard deviation of the sentence length (default: 8)");
+		opt.addOption("runaway", true,
+				"Probability of a sentence ten times longer than the mean (default: 0)");
+		opt.addOption("entities", true,
+				"Probability that a token starts a named entity (default: 0.1)");
+		opt.addOption("dup", true,
+				"Probability that a document duplicates a previous one (default: 0.05)");
+	}
+
+	/**
+	 * Create a generator configured by the options added by
+	 * {@link #addOptions(Options)}.
+	 */
+	public static CorpusGenerator fromCommandLine(CommandLine cl) {
+		return new CorpusGenerator(
+				Long.parseLong(cl.getOptionValue("seed", "42")),
+				Integer.parseInt(cl.getOptionValue("docs", "1000")),
+				Integer.parseInt(cl.getOptionValue("sentences", "10")),
+				Double.parseDouble(cl.getOptionValue("sentlen", "20")),
+				Double.parseDouble(cl.getOptionValue("sentsd", "8")),
+				Double.parseDouble(cl.getOptionValue("runaway", "0")),
+				Double.parseDouble(cl.getOptionValue("entities", "0.1")),
+				Double.parseDouble(cl.getOptionValue("dup", "0.05")));
+	}
+
+	/**
+	 * Write the corpus to the given directory and return its manifest.
+	 */
+	public Properties generate(File outputDir) throws IOException {
+		if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			throw new IOException("Unable to create directory [" + outputDir + "]");
+		}
+
+		// Previously generated documents, used to emit duplicates.
+		List<String> generated = new ArrayList<String>();
+		long tokens = 0;
+		long characters = 0;
+
+		// Token count of each generated document, to count duplicates too.
+		List<Integer> generatedTokens = new ArrayList<Integer>();
+
+		for (int i = 0; i < documents; i++) {
+			String text;
+			int docTokens;
+			if (!generated.isEmpty() && random.nextDouble() < duplicationRate) {
+				int j = random.nextInt(generated.size());
+				text = generated.get(j);
+				docTokens = generatedTokens.get(j);
+			}
+			else {
+				int[] count = new int[1];
+				text = document(count);
+				docTokens = count[0];
+				generated.add(text);
+				generatedTokens.add(docTokens);
+			}
+			write(new File(outputDir, String.format("doc-%06d.txt", i)), text);
+			tokens += docTokens;
+			characters += text.length();
+		}
+
+		Properties manifest = new Properties();
+		manifest.setProperty(KEY_DOCUMENTS, Integer.toString(documents));
+		manifest.setProperty(KEY_TOKENS, Long.toString(tokens));
+		manifest.setProperty(KEY_CHARACTERS, Long.toString(characters));
+		manifest.setProperty("sentencesPerDocument", Integer.toString(sentencesPerDocument));
+		manifest.setProperty("sentenceLengthMean", Double.toString(sentenceLengthMean));
+		manifest.setProperty("sentenceLengthStdDev", Double.toString(sentenceLengthStdDev));
+		manifest.setProperty("runawayRate", Double.toString(runawayRate));
+		manifest.setProperty("entityDensity", Double.toString(entityDensity));
+		manifest.setProperty("duplicationRate", Double.toString(duplicationRate));
+
+		FileOutputStream out = new FileOutputStream(new File(outputDir, MANIFEST));
+		try {
+			manifest.store(out, "Synthetic corpus");
+		}
+		finally {
+			IOUtils.closeQuietly(out);
+		}
+		return manifest;
+	}
+
+	/**
+	 * Generate a document. The number of tokens is stored in count[0].
+	 */
+	private String document(int[] count) {
+		// The number of sentences is uniformly distributed around the mean.
+		int sentences = 1 + random.nextInt(Math.max(1, 2 * sentencesPerDocument - 1));
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < sentences; i++) {
+			int length = sentenceLength();
+			count[0] += sentence(sb, length);
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	private int sentenceLength() {
+		if (runawayRate > 0 && random.nextDouble() < runawayRate) {
+			return (int) (10 * sentenceLengthMean);
+		}
+		long length = Math.round(sentenceLengthMean + random.nextGaussian() * sentenceLengthStdDev);
+		return (int) Math.max(3, length);
+	}
+
+	/**
+	 * Append a sentence of about the given number of tokens and return
+	 * the number of tokens actually appended. Runaway sentences are not
+	 * terminated by a full stop.
+	 */
+	private int sentence(StringBuilder sb, int length) {
+		List<String> tokens = new ArrayList<String>(length + 4);
+		while (tokens.size() < length - 1) {
+			if (random.nextDouble() < entityDensity) {
+				entity(tokens);
+				continue;
+			}
+			switch (random.nextInt(8)) {
+			case 0:
+			case 1:
+				tokens.add(pick(DETERMINERS));
+				if (random.nextBoolean()) {
+					tokens.add(pick(ADJECTIVES));
+				}
+				tokens.add(pick(NOUNS));
+				break;
+			case 2:
+			case 3:
+				tokens.add(pick(VERBS));
+				break;
+			case 4:
+			case 5:
+				tokens.add(pick(PREPOSITIONS));
+				break;
+			case 6:
+				tokens.add(tokens.isEmpty() ? pick(NOUNS) : ",");
+				break;
+			default:
+				tokens.add(pick(CONJUNCTIONS));
+				break;
+			}
+		}
+		boolean runaway = length > 3 * sentenceLengthMean;
+		if (!runaway) {
+			tokens.add(".");
+		}
+
+		for (int i = 0; i < tokens.size(); i++) {
+			String token = tokens.get(i);
+			if (i == 0) {
+				sb.append(Character.toUpperCase(token.charAt(0))).append(token, 1, token.length());
+				continue;
+			}
+			if (!token.equals(",") && !token.equals(".")) {
+				sb.append(' ');
+			}
+			sb.append(token);
+		}
+		return tokens.size();
+	}
+
+	private void entity(List<String> tokens) {
+		switch (random.nextInt(3)) {
+		case 0:
+			tokens.add(pick(FIRST_NAMES));
+			tokens.add(pick(LAST_NAMES));
+			break;
+		case 1:
+			addWords(tokens, pick(ORG_NAMES));
+			tokens.add(pick(ORG_SUFFIXES));
+			break;
+		default:
+			addWords(tokens, pick(LOCATIONS));
+			break;
+		}
+	}
+
+	private static void addWords(List<String> tokens, String words) {
+		for (String word : words.split(" ")) {
+			tokens.add(word);
+		}
+	}
+
+	private String pick(String[] words) {
+		return words[random.nextInt(words.length)];
+	}
+
+	private static void write(File file, String text) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			out.write(text);
+		}
+		finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+    public static void main( String[] args ) throws Exception {
+
+    	Options opt = new Options();
+
+    	// add help option
+    	opt.addOption("h", false, "Print help for this application");
+
+    	// add corpus generation options
+    	addOptions(opt);
+
+    	BasicParser parser = new BasicParser();
+    	CommandLine cl;
+
+    	try {
+    		cl = parser.parse(opt, args);
+    	} catch (Exception e) {
+    		System.err.println("Parameters format error");
+    		return;
+    	}
+
+    	if (cl.getArgs().length != 1 || cl.hasOption('h')) {
+    		// print the help
+    		HelpFormatter f = new HelpFormatter();
+    		f.printHelp("CorpusGenerator [option] destDir", opt);
+    		return;
+    	}
+
+    	Properties manifest = fromCommandLine(cl).generate(new File(cl.getArgs()[0]));
+    	System.out.printf("Generated %s documents, %s tokens%n",
+    			manifest.getProperty(KEY_DOCUMENTS), manifest.getProperty(KEY_TOKENS));
+    }
+}
@@ -0,0 +1,158 @@
+package it.unitn.ainlp.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Runs the main method of one of the demo applications and records how
+ * many resources it used. It is started in a fresh JVM by
+ * {@link ThroughputBenchmark}, so that the peak memory and the garbage
+ * collection time of each pipeline are not polluted by the other ones.
+ *
+ * Usage: <code>PipelineRun metricsFile mainClass [app args...]</code>
+ *
+ * The last argument of the application is its output directory. The demo
+ * applications print their usage and return normally on bad arguments, so
+ * the run fails with status 3, without writing the metrics, when the
+ * output directory is empty afterwards: a no-op run would otherwise be
+ * recorded with a huge throughput.
+ *
+ * The metrics are written to <i>metricsFile</i> as a properties file with
+ * the keys {@link #KEY_WALL_MILLIS}, {@link #KEY_CPU_MILLIS},
+ * {@link #KEY_GC_MILLIS} and {@link #KEY_PEAK_RSS_KB}.
+ */
+public class PipelineRun
+{
+	public static final String KEY_WALL_MILLIS = "wallMillis";
+	public static final String KEY_CPU_MILLIS = "cpuMillis";
+	public static final String KEY_GC_MILLIS = "gcMillis";
+	public static final String KEY_PEAK_RSS_KB = "peakRssKb";
+
+    public static void main( String[] args ) throws Exception {
+
+    	if (args.length < 2) {
+    		System.err.println("usage: PipelineRun metricsFile mainClass [app args...]");
+    		System.exit(2);
+    	}
+
+    	File metricsFile = new File(args[0]);
+    	Method appMain = Class.forName(args[1]).getMethod("main", String[].class);
+    	String[] appArgs = Arrays.copyOfRange(args, 2, args.length);
+
+    	long start = System.nanoTime();
+    	appMain.invoke(null, (Object) appArgs);
+    	long wallMillis = (System.nanoTime() - start) / 1000000;
+
+    	if (appArgs.length == 0 || !hasFiles(new File(appArgs[appArgs.length - 1]))) {
+    		System.err.println("PipelineRun: " + args[1] + " produced no output");
+    		System.exit(3);
+    	}
+
+    	Properties metrics = new Properties();
+    	metrics.setProperty(KEY_WALL_MILLIS, Long.toString(wallMillis));
+    	metrics.setProperty(KEY_CPU_MILLIS, Long.toString(cpuMillis()));
+    	metrics.setProperty(KEY_GC_MILLIS, Long.toString(gcMillis()));
+    	metrics.setProperty(KEY_PEAK_RSS_KB, Long.toString(peakRssKb()));
+
+    	FileOutputStream out = new FileOutputStream(metricsFile);
+    	try {
+    		metrics.store(out, args[1]);
+    	}
+    	finally {
+    		IOUtils.closeQuietly(out);
+    	}
+
+    	// Some engines leave non-daemon threads behind.
+    	System.exit(0);
+    }
+
+	/**
+	 * Check if a directory contains at least a file, in any subdirectory.
+	 */
+	static boolean hasFiles(File dir) {
+		File[] children = dir.listFiles();
+		if (children == null) {
+			return false;
+		}
+		for (File child : children) {
+			if (child.isFile() || hasFiles(child)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Total time spent by the collectors, in milliseconds.
+	 */
+	static long gcMillis() {
+		long total = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (gc.getCollectionTime() > 0) {
+				total += gc.getCollectionTime();
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * CPU time used by the whole process, in milliseconds, or -1 if the
+	 * JVM does not expose it.
+	 */
+	static long cpuMillis() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			long nanos = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+			return nanos < 0 ? -1 : nanos / 1000000;
+		}
+		return -1;
+	}
+
+	/**
+	 * Peak resident set size in kilobytes. On Linux it is read from
+	 * <i>/proc/self/status</i>; on other systems we fall back to the sum
+	 * of the peak usage of the JVM memory pools.
+	 */
+	static long peakRssKb() {
+		File status = new File("/proc/self/status");
+		if (status.canRead()) {
+			BufferedReader in = null;
+			try {
+				in = new BufferedReader(new InputStreamReader(new FileInputStream(status), "US-ASCII"));
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (line.startsWith("VmHWM:")) {
+						return Long.parseLong(line.substring(6).replace("kB", "").trim());
+					}
+				}
+			}
+			catch (IOException e) {
+				// fall back to the memory pools
+			}
+			finally {
+				IOUtils.closeQuietly(in);
+			}
+		}
+
+		long total = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getPeakUsage() != null) {
+				total += pool.getPeakUsage().getUsed();
+			}
+		}
+		return total / 1024;
+	}
+}
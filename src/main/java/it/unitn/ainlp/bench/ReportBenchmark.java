@@ -0,0 +1,228 @@
+package it.unitn.ainlp.bench;
+
+import static org.apache.uima.fit.util.JCasUtil.select;
+import static org.apache.uima.fit.util.JCasUtil.selectCovered;
+import it.unitn.ainlp.report.AsyncReportSink;
+import it.unitn.ainlp.report.ReportSink;
+import it.unitn.ainlp.report.WriterReportSink;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.io.FileUtils;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.NN;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Lemma;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.tudarmstadt.ukp.dkpro.core.api.syntax.type.PennTree;
+
+/**
+ * Measures the cost of the console report of NLPDemoXmiCas alone, without
+ * the analysis engines.
+ *
+ * The documents of a synthetic corpus generated by {@link CorpusGenerator}
+ * are annotated with a trivial whitespace tokenizer (every capitalized
+ * token is a named entity, every sentence gets a flat parse tree), so
+ * that no model is needed, and then reported to the standard output in
+ * each of the following modes:
+ * <ul>
+ * <li><i>printf</i>: the original loop of NLPDemoXmiCas, calling
+ *     <code>System.out.printf</code> for each line;</li>
+ * <li><i>buffered</i>: the {@link WriterReportSink} on the console;</li>
+ * <li><i>async</i>: the {@link AsyncReportSink} on the console.</li>
+ * </ul>
+ * Only the time spent reporting is measured, and printed to the standard
+ * error, so the standard output should be redirected, e.g.
+ * <code>ReportBenchmark -docs 50 -sentences 200 &gt; /dev/null</code>.
+ *
+ * The end-to-end effect on NLPDemoXmiCas is measured by the
+ * NLPDemoXmiCasAsync and NLPDemoXmiCasQuiet pipelines of the
+ * {@link ThroughputBenchmark}.
+ */
+public class ReportBenchmark
+{
+	private static final List<String> MODES = Arrays.asList("printf", "buffered", "async");
+
+    public static void main( String[] args ) throws Exception {
+
+    	Options opt = new Options();
+
+    	// add help option
+    	opt.addOption("h", false, "Print help for this application");
+
+    	opt.addOption("modes", true, "Comma separated list of modes, among printf, buffered, "
+    			+ "async (default: all)");
+
+    	// add corpus generation options
+    	CorpusGenerator.addOptions(opt);
+
+    	BasicParser parser = new BasicParser();
+    	CommandLine cl;
+
+    	try {
+    		cl = parser.parse(opt, args);
+    	} catch (Exception e) {
+    		System.err.println("Parameters format error");
+    		return;
+    	}
+
+    	String[] modes = cl.getOptionValue("modes", "printf,buffered,async").split(",");
+    	boolean valid = true;
+    	for (String mode : modes) {
+    		valid &= MODES.contains(mode);
+    	}
+
+    	if (cl.getArgs().length != 0 || cl.hasOption('h') || !valid) {
+    		// print the help
+    		HelpFormatter f = new HelpFormatter();
+    		f.printHelp("ReportBenchmark [option] > /dev/null", opt);
+    		return;
+    	}
+
+    	// generate the corpus and annotate it in memory
+    	File corpusDir = File.createTempFile("corpus", "");
+    	corpusDir.delete();
+    	List<JCas> documents = new ArrayList<JCas>();
+    	long tokens = 0;
+    	try {
+    		CorpusGenerator.fromCommandLine(cl).generate(corpusDir);
+    		File[] files = corpusDir.listFiles();
+    		Arrays.sort(files);
+    		for (File file : files) {
+    			if (file.getName().endsWith(".txt")) {
+    				JCas jcas = annotate(FileUtils.readFileToString(file, "UTF-8"));
+    				tokens += select(jcas, Token.class).size();
+    				documents.add(jcas);
+    			}
+    		}
+    	}
+    	finally {
+    		FileUtils.deleteQuietly(corpusDir);
+    	}
+
+    	for (String mode : modes) {
+    		long start = System.nanoTime();
+    		if (mode.equals("printf")) {
+    			for (JCas jcas : documents) {
+    				printf(jcas);
+    			}
+    			System.out.flush();
+    		}
+    		else {
+    			ReportSink sink = mode.equals("async")
+    					? new AsyncReportSink(WriterReportSink.console(), 16)
+    					: WriterReportSink.console();
+    			for (JCas jcas : documents) {
+    				sink.report(jcas);
+    			}
+    			sink.close();
+    		}
+    		long millis = (System.nanoTime() - start) / 1000000;
+    		System.err.println(String.format(Locale.ROOT, "%-10s %8d ms %12.2f tokens/s", mode,
+    				millis, tokens * 1000.0 / Math.max(1, millis)));
+    	}
+    }
+
+	/**
+	 * Annotate a document of the synthetic corpus (one sentence per line)
+	 * with tokens, lemmas, POSs, named entities and a flat parse tree.
+	 */
+	private static JCas annotate(String text) throws Exception {
+		JCas jcas = JCasFactory.createJCas();
+		jcas.setDocumentText(text);
+		jcas.setDocumentLanguage("en");
+
+		int lineStart = 0;
+		while (lineStart < text.length()) {
+			int lineEnd = text.indexOf('\n', lineStart);
+			if (lineEnd < 0) {
+				lineEnd = text.length();
+			}
+			StringBuilder tree = new StringBuilder("(ROOT (S");
+			int i = lineStart;
+			while (i < lineEnd) {
+				while (i < lineEnd && text.charAt(i) == ' ') {
+					i++;
+				}
+				int begin = i;
+				while (i < lineEnd && text.charAt(i) != ' ') {
+					i++;
+				}
+				if (begin == i) {
+					break;
+				}
+				String word = text.substring(begin, i);
+				boolean capitalized = Character.isUpperCase(word.charAt(0));
+
+				POS pos = capitalized ? new NN(jcas, begin, i) : new POS(jcas, begin, i);
+				pos.setPosValue(capitalized ? "NNP" : "X");
+				pos.addToIndexes();
+				Lemma lemma = new Lemma(jcas, begin, i);
+				lemma.setValue(word.toLowerCase());
+				lemma.addToIndexes();
+				Token token = new Token(jcas, begin, i);
+				token.setPos(pos);
+				token.setLemma(lemma);
+				token.addToIndexes();
+				if (capitalized && begin > lineStart) {
+					NamedEntity ne = new NamedEntity(jcas, begin, i);
+					ne.setValue("person");
+					ne.addToIndexes();
+				}
+				tree.append(" (").append(pos.getPosValue()).append(' ').append(word).append(')');
+			}
+			if (lineEnd > lineStart) {
+				new Sentence(jcas, lineStart, lineEnd).addToIndexes();
+				PennTree pennTree = new PennTree(jcas, lineStart, lineEnd);
+				pennTree.setPennTree(tree.append("))").toString());
+				pennTree.addToIndexes();
+			}
+			lineStart = lineEnd + 1;
+		}
+		return jcas;
+	}
+
+	/**
+	 * The console report of NLPDemoXmiCas before the report sinks.
+	 */
+	private static void printf(JCas jcas) {
+		for (Sentence sentence : select(jcas, Sentence.class)) {
+			System.out.printf("%n== Sentence ==%n");
+			System.out.printf("  %-16s %-10s %-10s %-10s %n", "TOKEN", "LEMMA",
+					"CPOS", "POS");
+
+			// Print tokens, lemmas, chunk POSs ad POSs
+			for (Token token : selectCovered(Token.class, sentence)) {
+				System.out.printf("  %-16s %-10s %-10s %-10s %n",
+						token.getCoveredText(),
+						token.getLemma() != null ? token.getLemma().getValue() : "",
+						token.getPos().getClass().getSimpleName(),
+						token.getPos().getPosValue());
+			}
+
+			// Print named entities
+			System.out.printf("%n  -- Named Entities --%n");
+			System.out.printf("  %-16s %-10s%n", "ENTITY", "TOKENS");
+			for (NamedEntity ne : selectCovered(NamedEntity.class, sentence)) {
+				System.out.printf("  %-16s %-10s%n", ne.getValue(), ne.getCoveredText());
+			}
+
+			// Print constituency-based parse trees in Penn format
+			System.out.printf("%n  -- PennTree --%n");
+			List<PennTree> trees = new ArrayList<PennTree>(selectCovered(PennTree.class, sentence));
+			System.out.printf("  %s%n%n", trees.get(0).getPennTree());
+		}
+	}
+}
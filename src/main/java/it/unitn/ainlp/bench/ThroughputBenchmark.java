@@ -0,0 +1,361 @@
+package it.unitn.ainlp.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * End-to-end throughput regression harness.
+ *
+ * The harness generates a synthetic corpus with {@link CorpusGenerator}
+ * (or uses an existing one), runs each of the selected pipelines over it
+ * in a separate JVM by means of {@link PipelineRun}, and records for each
+ * pipeline the documents per second, tokens per second, peak resident
+ * set size, garbage collection time and CPU time in a results file.
+ *
+ * If a baseline results file is given, each metric is compared with the
+ * baseline and the harness exits with status 1 when any pipeline regresses
+ * past the threshold: throughput must not drop, and peak memory and GC
+ * time must not grow, by more than the given fraction.
+ *
+ * The pipelines run by default are the three demo applications; the
+ * micro-batched variants of NERDemo and the asynchronous and quiet
+ * variants of NLPDemoXmiCas can be selected with -pipelines.
+ *
+ * When FanOutDemo runs together with NERDemo, ChunkerDemo and
+ * NLPDemoXmiCasQuiet, the harness also records as
+ * <i>FanOutDemo.sequentialCpuMillis</i> the CPU time the three
+ * applications take when run one after the other, to be compared with the
+ * CPU time of the fan-out pipeline. The quiet variant of NLPDemoXmiCas is
+ * used because FanOutDemo prints no console report. The comparison is not
+ * like-for-like, though: ChunkerDemo is an exercise template that does
+ * not run the chunker, while FanOutDemo does. The fan-out pipeline does
+ * more work, so the saving it shows is a lower bound.
+ *
+ * Note that the measured time includes the loading of the models, so the
+ * corpus should be large enough to amortize it.
+ */
+public class ThroughputBenchmark
+{
+	/**
+	 * Known pipelines: the name maps to the main class followed by the
+	 * options passed to it before the input and output arguments.
+	 */
+	private static final Map<String, String[]> PIPELINES = new LinkedHashMap<String, String[]>();
+
+	static {
+		PIPELINES.put("NERDemo", new String[] { "it.unitn.ainlp.app.NERDemo" });
+		PIPELINES.put("ChunkerDemo", new String[] { "it.unitn.ainlp.chunker.app.ChunkerDemo" });
+		PIPELINES.put("NLPDemoXmiCas", new String[] { "it.unitn.ainlp.app.NLPDemoXmiCas" });
+
+		// Micro-batched NER, to be compared with NERDemo on short documents
+		// (e.g. -sentences 1 -sentlen 12).
+		PIPELINES.put("NERDemoBatch", new String[] { "it.unitn.ainlp.app.NERDemo",
+			"-batch", "64" });
+		PIPELINES.put("NERDemoBatchLowLatency", new String[] { "it.unitn.ainlp.app.NERDemo",
+			"-batch", "8", "-latency", "50" });
+
+		// Console report variants of NLPDemoXmiCas, to be compared on large
+		// documents (e.g. -sentences 200).
+		PIPELINES.put("NLPDemoXmiCasAsync", new String[] { "it.unitn.ainlp.app.NLPDemoXmiCas",
+			"-async" });
+		PIPELINES.put("NLPDemoXmiCasQuiet", new String[] { "it.unitn.ainlp.app.NLPDemoXmiCas",
+			"-q" });
+
+		// The three demo applications sharing a single analysis pass.
+		PIPELINES.put("FanOutDemo", new String[] { "it.unitn.ainlp.app.FanOutDemo" });
+	}
+
+	/**
+	 * The applications whose work is done by FanOutDemo in a single run.
+	 * NLPDemoXmiCas runs quiet, as FanOutDemo prints no console report;
+	 * ChunkerDemo does not run the chunker, unlike FanOutDemo.
+	 */
+	private static final String[] FAN_OUT_SEQUENTIAL = { "NERDemo", "ChunkerDemo",
+		"NLPDemoXmiCasQuiet" };
+
+	public static final String SEQUENTIAL_CPU_MILLIS = "sequentialCpuMillis";
+
+	/** Pipelines run when -pipelines is not given: the three demo applications. */
+	private static final List<String> DEFAULT_PIPELINES = Arrays.asList("NERDemo", "ChunkerDemo",
+			"NLPDemoXmiCas");
+
+	public static final String DOCS_PER_SEC = "docsPerSec";
+	public static final String TOKENS_PER_SEC = "tokensPerSec";
+
+	/** Metrics for which a higher value is better. */
+	private static final String[] HIGHER_IS_BETTER = { DOCS_PER_SEC, TOKENS_PER_SEC };
+
+	/** Metrics for which a lower value is better. */
+	private static final String[] LOWER_IS_BETTER = { PipelineRun.KEY_PEAK_RSS_KB,
+		PipelineRun.KEY_GC_MILLIS };
+
+	/** Ignore GC time differences below this value, they are just noise. */
+	private static final long GC_NOISE_MILLIS = 200;
+
+    public static void main( String[] args ) throws Exception {
+
+    	Options opt = new Options();
+
+    	// add help option
+    	opt.addOption("h", false, "Print help for this application");
+
+    	opt.addOption("corpus", true, "Use an existing corpus instead of generating one");
+    	opt.addOption("pipelines", true, "Comma separated list of pipelines to run, among "
+    			+ join(PIPELINES.keySet()) + " (default: " + join(DEFAULT_PIPELINES) + ")");
+    	opt.addOption("runs", true, "Runs per pipeline, the best one is kept (default: 1)");
+    	opt.addOption("results", true, "Results file (default: workDir/results.properties)");
+    	opt.addOption("baseline", true, "Baseline results file to compare with");
+    	opt.addOption("threshold", true, "Maximum allowed regression as a fraction (default: 0.1)");
+    	opt.addOption("jvmargs", true, "Space separated options for the pipeline JVMs");
+
+    	// add corpus generation options
+    	CorpusGenerator.addOptions(opt);
+
+    	BasicParser parser = new BasicParser();
+    	CommandLine cl;
+
+    	try {
+    		cl = parser.parse(opt, args);
+    	} catch (Exception e) {
+    		System.err.println("Parameters format error");
+    		return;
+    	}
+
+    	if (cl.getArgs().length != 1 || cl.hasOption('h')) {
+    		// print the help
+    		HelpFormatter f = new HelpFormatter();
+    		f.printHelp("ThroughputBenchmark [option] workDir", opt);
+    		return;
+    	}
+
+    	File workDir = new File(cl.getArgs()[0]);
+    	workDir.mkdirs();
+
+    	// get or generate the corpus
+    	File corpusDir;
+    	Properties manifest;
+    	if (cl.hasOption("corpus")) {
+    		corpusDir = new File(cl.getOptionValue("corpus"));
+    		manifest = load(new File(corpusDir, CorpusGenerator.MANIFEST));
+    	}
+    	else {
+    		corpusDir = new File(workDir, "corpus");
+    		FileUtils.deleteQuietly(corpusDir);
+    		manifest = CorpusGenerator.fromCommandLine(cl).generate(corpusDir);
+    	}
+    	long documents = Long.parseLong(manifest.getProperty(CorpusGenerator.KEY_DOCUMENTS));
+    	long tokens = Long.parseLong(manifest.getProperty(CorpusGenerator.KEY_TOKENS));
+
+    	String[] names = cl.getOptionValue("pipelines", join(DEFAULT_PIPELINES)).split(",");
+    	int runs = Integer.parseInt(cl.getOptionValue("runs", "1"));
+    	String[] jvmArgs = cl.hasOption("jvmargs")
+    			? cl.getOptionValue("jvmargs").trim().split("\\s+") : new String[0];
+
+    	Properties results = new Properties();
+    	results.setProperty(CorpusGenerator.KEY_DOCUMENTS, Long.toString(documents));
+    	results.setProperty(CorpusGenerator.KEY_TOKENS, Long.toString(tokens));
+
+    	for (String name : names) {
+    		String[] pipeline = PIPELINES.get(name);
+    		if (pipeline == null) {
+    			System.err.println("Unknown pipeline: " + name);
+    			System.exit(2);
+    		}
+
+    		Properties best = null;
+    		for (int i = 0; i < runs; i++) {
+    			Properties metrics = run(name, pipeline, jvmArgs, corpusDir, workDir);
+    			if (best == null || wallMillis(metrics) < wallMillis(best)) {
+    				best = metrics;
+    			}
+    		}
+
+    		double seconds = Math.max(1, wallMillis(best)) / 1000.0;
+    		results.setProperty(name + "." + DOCS_PER_SEC, format(documents / seconds));
+    		results.setProperty(name + "." + TOKENS_PER_SEC, format(tokens / seconds));
+    		for (String key : best.stringPropertyNames()) {
+    			results.setProperty(name + "." + key, best.getProperty(key));
+    		}
+    		System.out.printf("%-16s %10s docs/s %12s tokens/s %10s kB RSS %8s ms GC%n", name,
+    				results.getProperty(name + "." + DOCS_PER_SEC),
+    				results.getProperty(name + "." + TOKENS_PER_SEC),
+    				best.getProperty(PipelineRun.KEY_PEAK_RSS_KB),
+    				best.getProperty(PipelineRun.KEY_GC_MILLIS));
+    	}
+
+    	compareFanOut(results);
+
+    	File resultsFile = new File(cl.getOptionValue("results",
+    			new File(workDir, "results.properties").getPath()));
+    	store(results, resultsFile);
+    	System.out.println("Results written to " + resultsFile);
+
+    	if (cl.hasOption("baseline")) {
+    		Properties baseline = load(new File(cl.getOptionValue("baseline")));
+    		double threshold = Double.parseDouble(cl.getOptionValue("threshold", "0.1"));
+    		List<String> regressions = compare(baseline, results, names, threshold);
+    		for (String regression : regressions) {
+    			System.err.println("REGRESSION " + regression);
+    		}
+    		if (!regressions.isEmpty()) {
+    			System.exit(1);
+    		}
+    		System.out.println("No regression against " + cl.getOptionValue("baseline"));
+    	}
+    }
+
+	/**
+	 * Record and print the CPU time of the applications replaced by
+	 * FanOutDemo, if all of them have been run.
+	 */
+	private static void compareFanOut(Properties results) {
+		String fanOut = results.getProperty("FanOutDemo." + PipelineRun.KEY_CPU_MILLIS);
+		if (fanOut == null) {
+			return;
+		}
+		long sequential = 0;
+		for (String name : FAN_OUT_SEQUENTIAL) {
+			String cpu = results.getProperty(name + "." + PipelineRun.KEY_CPU_MILLIS);
+			if (cpu == null) {
+				return;
+			}
+			sequential += Long.parseLong(cpu);
+		}
+		results.setProperty("FanOutDemo." + SEQUENTIAL_CPU_MILLIS, Long.toString(sequential));
+		System.out.printf("FanOutDemo CPU %s ms, sequential CPU %d ms (%s, chunker in FanOutDemo only)%n",
+				fanOut, sequential, format((double) Long.parseLong(fanOut) / Math.max(1, sequential)));
+	}
+
+	/**
+	 * Run a pipeline in a fresh JVM and return the metrics it recorded.
+	 */
+	private static Properties run(String name, String[] pipeline, String[] jvmArgs,
+			File corpusDir, File workDir)
+		throws IOException, InterruptedException
+	{
+		File outputDir = new File(workDir, "output/" + name);
+		FileUtils.deleteQuietly(outputDir);
+		File metricsFile = new File(workDir, name + ".metrics");
+		File logFile = new File(workDir, name + ".log");
+		FileUtils.deleteQuietly(metricsFile);
+
+		List<String> command = new ArrayList<String>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		command.addAll(Arrays.asList(jvmArgs));
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(PipelineRun.class.getName());
+		command.add(metricsFile.getPath());
+		command.addAll(Arrays.asList(pipeline));
+		command.add(new File(corpusDir, "*.txt").getPath());
+		command.add(outputDir.getPath());
+
+		ProcessBuilder pb = new ProcessBuilder(command);
+		pb.redirectErrorStream(true);
+		pb.redirectOutput(logFile);
+		int status = pb.start().waitFor();
+		if (status != 0 || !metricsFile.isFile()) {
+			throw new IOException("Pipeline " + name + " failed with status " + status
+					+ ", see " + logFile);
+		}
+		return load(metricsFile);
+	}
+
+	/**
+	 * Compare the results with the baseline and describe each metric
+	 * that regressed by more than the threshold.
+	 */
+	static List<String> compare(Properties baseline, Properties results, String[] names,
+			double threshold)
+	{
+		List<String> regressions = new ArrayList<String>();
+		for (String name : names) {
+			for (String metric : HIGHER_IS_BETTER) {
+				String key = name + "." + metric;
+				if (baseline.getProperty(key) == null) {
+					continue;
+				}
+				double expected = Double.parseDouble(baseline.getProperty(key));
+				double actual = Double.parseDouble(results.getProperty(key));
+				if (actual < expected * (1 - threshold)) {
+					regressions.add(key + ": " + format(actual) + " < " + format(expected));
+				}
+			}
+			for (String metric : LOWER_IS_BETTER) {
+				String key = name + "." + metric;
+				if (baseline.getProperty(key) == null) {
+					continue;
+				}
+				double expected = Double.parseDouble(baseline.getProperty(key));
+				double actual = Double.parseDouble(results.getProperty(key));
+				if (metric.equals(PipelineRun.KEY_GC_MILLIS) && actual - expected < GC_NOISE_MILLIS) {
+					continue;
+				}
+				if (actual > expected * (1 + threshold)) {
+					regressions.add(key + ": " + format(actual) + " > " + format(expected));
+				}
+			}
+		}
+		return regressions;
+	}
+
+	private static long wallMillis(Properties metrics) {
+		return Long.parseLong(metrics.getProperty(PipelineRun.KEY_WALL_MILLIS));
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.2f", value);
+	}
+
+	private static String join(Iterable<String> values) {
+		StringBuilder sb = new StringBuilder();
+		for (String value : values) {
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(value);
+		}
+		return sb.toString();
+	}
+
+	private static Properties load(File file) throws IOException {
+		Properties properties = new Properties();
+		FileInputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		}
+		finally {
+			IOUtils.closeQuietly(in);
+		}
+		return properties;
+	}
+
+	private static void store(Properties properties, File file) throws IOException {
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			properties.store(out, "Throughput benchmark results");
+		}
+		finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+}
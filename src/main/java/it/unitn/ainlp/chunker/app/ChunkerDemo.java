@@ -3,6 +3,7 @@ package it.unitn.ainlp.chunker.app;
 import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
 import static org.apache.uima.fit.factory.CollectionReaderFactory.createReaderDescription;
 import static org.apache.uima.fit.pipeline.SimplePipeline.runPipeline;
+import it.unitn.ainlp.reader.CompressedTextReader;
 import it.unitn.ainlp.writer.ConllWriter;
 
 import org.apache.commons.cli.*;
@@ -60,11 +61,16 @@ public class ChunkerDemo
     	    	
     	runPipeline(
     			/*
-    			 * Read text from file passed in input 
+    			 * Read text from file passed in input, straight out of
+    			 * compressed files and archives if needed.
     			 */
-    			createReaderDescription(TextReader.class,
-    					TextReader.PARAM_SOURCE_LOCATION, inputFile, 
-    					TextReader.PARAM_LANGUAGE, "en"),
+    			CompressedTextReader.accepts(inputFile)
+    					? createReaderDescription(CompressedTextReader.class,
+    							CompressedTextReader.PARAM_SOURCE_LOCATION, inputFile,
+    							CompressedTextReader.PARAM_LANGUAGE, "en")
+    					: createReaderDescription(TextReader.class,
+    							TextReader.PARAM_SOURCE_LOCATION, inputFile, 
+    							TextReader.PARAM_LANGUAGE, "en"),
     					
     			/* 
     			 * Perform tokenization and sentence boundary detection 
@@ -0,0 +1,147 @@
+package it.unitn.ainlp.pipeline;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.cas.ArrayFS;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.StringArrayFS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.text.AnnotationFS;
+
+/**
+ * Copies the annotations produced on a merged CAS back to the CASes of
+ * the documents it was built from.
+ *
+ * The merged CAS contains the text of several documents one after the
+ * other. Each annotation is assigned to the document its begin offset
+ * falls in, its offsets are shifted by the start of that document and,
+ * should it cross the end of the document, its end is clipped. Features
+ * pointing to other feature structures (e.g. the POS of a Token) are
+ * copied recursively, so that the references are preserved in the target
+ * CAS.
+ */
+class AnnotationScatter
+{
+	private final CAS source;
+
+	private final Type skipType;
+
+	/**
+	 * @param source the merged CAS.
+	 * @param skipType the type of the annotations marking the documents in
+	 * 		the merged CAS, which are not copied.
+	 */
+	AnnotationScatter(CAS source, Type skipType) {
+		this.source = source;
+		this.skipType = skipType;
+	}
+
+	/**
+	 * Copy the annotations of the merged CAS to the targets.
+	 *
+	 * @param targets the CASes of the documents.
+	 * @param starts the offset at which each document starts in the merged CAS.
+	 * @param ends the offset at which each document ends in the merged CAS.
+	 */
+	void scatter(CAS[] targets, int[] starts, int[] ends, int count) {
+		Type documentAnnotation = source.getTypeSystem().getType(CAS.TYPE_NAME_DOCUMENT_ANNOTATION);
+
+		// one map for each target, to copy each feature structure only once
+		List<Map<FeatureStructure, FeatureStructure>> copies =
+				new ArrayList<Map<FeatureStructure, FeatureStructure>>(count);
+		for (int i = 0; i < count; i++) {
+			copies.add(new HashMap<FeatureStructure, FeatureStructure>());
+		}
+
+		// The annotation index is sorted by begin offset, so the document
+		// each annotation belongs to never goes backwards.
+		int doc = 0;
+		FSIterator<AnnotationFS> it = source.getAnnotationIndex().iterator();
+		while (it.hasNext()) {
+			AnnotationFS a = it.next();
+			Type type = a.getType();
+			if (type.equals(documentAnnotation) || type.equals(skipType)) {
+				continue;
+			}
+			while (doc < count - 1 && a.getBegin() >= starts[doc + 1]) {
+				doc++;
+			}
+			AnnotationFS copy = (AnnotationFS) copy(a, targets[doc], starts[doc], ends[doc],
+					copies.get(doc));
+			targets[doc].addFsToIndexes(copy);
+		}
+	}
+
+	private FeatureStructure copy(FeatureStructure fs, CAS target, int start, int end,
+			Map<FeatureStructure, FeatureStructure> copies)
+	{
+		FeatureStructure copy = copies.get(fs);
+		if (copy != null) {
+			return copy;
+		}
+
+		TypeSystem ts = target.getTypeSystem();
+		Type type = ts.getType(fs.getType().getName());
+
+		if (fs instanceof StringArrayFS) {
+			StringArrayFS array = (StringArrayFS) fs;
+			StringArrayFS arrayCopy = target.createStringArrayFS(array.size());
+			arrayCopy.copyFromArray(array.toArray(), 0, 0, array.size());
+			copies.put(fs, arrayCopy);
+			return arrayCopy;
+		}
+		if (fs instanceof ArrayFS) {
+			ArrayFS array = (ArrayFS) fs;
+			ArrayFS arrayCopy = target.createArrayFS(array.size());
+			copies.put(fs, arrayCopy);
+			for (int i = 0; i < array.size(); i++) {
+				FeatureStructure element = array.get(i);
+				if (element != null) {
+					arrayCopy.set(i, copy(element, target, start, end, copies));
+				}
+			}
+			return arrayCopy;
+		}
+		if (fs.getType().isArray()) {
+			throw new IllegalStateException("Unsupported array type [" + type.getName() + "]");
+		}
+
+		if (fs instanceof AnnotationFS) {
+			AnnotationFS a = (AnnotationFS) fs;
+			int begin = Math.max(a.getBegin(), start) - start;
+			int stop = Math.max(Math.min(a.getEnd(), end), start) - start;
+			copy = target.createAnnotation(type, begin, stop);
+		}
+		else {
+			copy = target.createFS(type);
+		}
+		copies.put(fs, copy);
+
+		for (Feature feature : fs.getType().getFeatures()) {
+			String name = feature.getShortName();
+			if (fs instanceof AnnotationFS && (name.equals(CAS.FEATURE_BASE_NAME_SOFA)
+					|| name.equals(CAS.FEATURE_BASE_NAME_BEGIN)
+					|| name.equals(CAS.FEATURE_BASE_NAME_END))) {
+				continue;
+			}
+			Feature targetFeature = type.getFeatureByBaseName(name);
+			if (feature.getRange().isPrimitive()) {
+				copy.setFeatureValueFromString(targetFeature, fs.getFeatureValueAsString(feature));
+			}
+			else {
+				FeatureStructure value = fs.getFeatureValue(feature);
+				if (value != null) {
+					copy.setFeatureValue(targetFeature, copy(value, target, start, end, copies));
+				}
+			}
+		}
+		return copy;
+	}
+}
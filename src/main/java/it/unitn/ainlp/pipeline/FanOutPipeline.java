@@ -0,0 +1,265 @@
+package it.unitn.ainlp.pipeline;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
+import static org.apache.uima.fit.factory.CollectionReaderFactory.createReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.collection.CollectionReaderDescription;
+import org.apache.uima.fit.util.LifeCycleUtil;
+import org.apache.uima.resource.metadata.MetaDataObject;
+import org.apache.uima.util.CasCopier;
+import org.apache.uima.util.CasCreationUtils;
+
+/**
+ * Runs a shared prefix of analysis engines once per document and then
+ * fans the result out to several branches, which run in parallel.
+ *
+ * The prefix (e.g. segmentation, lemmatization, POS tagging) runs on the
+ * calling thread. Each branch (e.g. chunking plus a CoNLL writer, parsing
+ * plus an XMI writer) has its own thread and its own small pool of CASes:
+ * when the prefix is done, the CAS is copied into a CAS of each branch and
+ * the prefix moves on to the next document. Since every branch works on a
+ * private copy, the branches can add annotations without interfering with
+ * each other, and the engines of a branch are only ever called by its own
+ * thread.
+ *
+ * The size of the pools bounds the number of documents a branch may lag
+ * behind the prefix: when the slowest branch has no free CAS, the prefix
+ * waits for it.
+ *
+ * Branches that only read the CAS (e.g. a plain writer) don't need a copy:
+ * they are added as shared branches, and run on the calling thread on the
+ * CAS of the prefix, once the copies for the other branches have been
+ * made. They don't run in parallel with the prefix, since the JCas is not
+ * safe for concurrent use, not even for reading.
+ */
+public class FanOutPipeline
+{
+	private final CollectionReaderDescription readerDesc;
+
+	private final AnalysisEngineDescription prefixDesc;
+
+	private final List<String> branchNames = new ArrayList<String>();
+
+	private final List<AnalysisEngineDescription> branchDescs = new ArrayList<AnalysisEngineDescription>();
+
+	private final List<AnalysisEngineDescription> sharedDescs = new ArrayList<AnalysisEngineDescription>();
+
+	private int inFlight = 2;
+
+	/** First error raised by a branch. */
+	private volatile Exception error;
+
+	/**
+	 * @param reader the collection reader.
+	 * @param prefix the engines run once per document.
+	 */
+	public FanOutPipeline(CollectionReaderDescription reader, AnalysisEngineDescription prefix) {
+		this.readerDesc = reader;
+		this.prefixDesc = prefix;
+	}
+
+	/**
+	 * Add a branch, run in parallel with the others on a copy of the
+	 * result of the prefix.
+	 */
+	public FanOutPipeline addBranch(String name, AnalysisEngineDescription branch) {
+		branchNames.add(name);
+		branchDescs.add(branch);
+		return this;
+	}
+
+	/**
+	 * Add a branch that only reads the CAS, run on the CAS of the prefix
+	 * after the copies for the other branches have been made.
+	 */
+	public FanOutPipeline addSharedBranch(AnalysisEngineDescription branch) {
+		sharedDescs.add(branch);
+		return this;
+	}
+
+	/**
+	 * Set the number of documents each branch may have in flight (default: 2).
+	 */
+	public FanOutPipeline setInFlight(int inFlight) {
+		this.inFlight = inFlight;
+		return this;
+	}
+
+	/**
+	 * Process all the documents of the collection.
+	 */
+	public void run() throws UIMAException, IOException {
+		error = null;
+		CollectionReader reader = createReader(readerDesc);
+		AnalysisEngine prefix = createEngine(prefixDesc);
+		int n = branchDescs.size();
+		AnalysisEngine[] branches = new AnalysisEngine[n];
+		for (int i = 0; i < n; i++) {
+			branches[i] = createEngine(branchDescs.get(i));
+		}
+		AnalysisEngine[] shared = new AnalysisEngine[sharedDescs.size()];
+		for (int i = 0; i < shared.length; i++) {
+			shared[i] = createEngine(sharedDescs.get(i));
+		}
+
+		ExecutorService[] workers = new ExecutorService[n];
+		try {
+			// All the CASes share the same type system, the one of the whole
+			// pipeline, so that they can be copied into each other.
+			List<MetaDataObject> metaData = new ArrayList<MetaDataObject>();
+			metaData.add(reader.getMetaData());
+			metaData.add(prefix.getMetaData());
+			for (AnalysisEngine branch : branches) {
+				metaData.add(branch.getMetaData());
+			}
+			for (AnalysisEngine branch : shared) {
+				metaData.add(branch.getMetaData());
+			}
+
+			CAS cas = CasCreationUtils.createCas(metaData);
+			List<BlockingQueue<CAS>> pools = new ArrayList<BlockingQueue<CAS>>();
+			for (int i = 0; i < n; i++) {
+				BlockingQueue<CAS> pool = new ArrayBlockingQueue<CAS>(inFlight);
+				for (int j = 0; j < inFlight; j++) {
+					pool.add(CasCreationUtils.createCas(metaData, cas.getTypeSystem(), null));
+				}
+				pools.add(pool);
+				workers[i] = newWorker(branchNames.get(i));
+			}
+
+			while (reader.hasNext() && error == null) {
+				reader.getNext(cas);
+				prefix.process(cas);
+
+				for (int i = 0; i < n; i++) {
+					CAS copy = take(pools.get(i));
+					copy(cas, copy);
+					workers[i].execute(new BranchTask(branches[i], copy, pools.get(i)));
+				}
+				for (AnalysisEngine branch : shared) {
+					branch.process(cas);
+				}
+				cas.reset();
+			}
+
+			// wait for the branches to drain
+			for (ExecutorService worker : workers) {
+				worker.shutdown();
+			}
+			for (ExecutorService worker : workers) {
+				awaitTermination(worker);
+			}
+			if (error != null) {
+				throw new AnalysisEngineProcessException(error);
+			}
+
+			LifeCycleUtil.collectionProcessComplete(prefix);
+			LifeCycleUtil.collectionProcessComplete(branches);
+			LifeCycleUtil.collectionProcessComplete(shared);
+		}
+		finally {
+			for (ExecutorService worker : workers) {
+				if (worker != null) {
+					worker.shutdownNow();
+				}
+			}
+			LifeCycleUtil.close(reader);
+			LifeCycleUtil.destroy(reader);
+			LifeCycleUtil.destroy(prefix);
+			LifeCycleUtil.destroy(branches);
+			LifeCycleUtil.destroy(shared);
+		}
+	}
+
+	/** Runs a branch on a CAS and gives the CAS back to the pool. */
+	private class BranchTask
+		implements Runnable
+	{
+		private final AnalysisEngine branch;
+
+		private final CAS cas;
+
+		private final BlockingQueue<CAS> pool;
+
+		BranchTask(AnalysisEngine branch, CAS cas, BlockingQueue<CAS> pool) {
+			this.branch = branch;
+			this.cas = cas;
+			this.pool = pool;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (error == null) {
+					branch.process(cas);
+				}
+			}
+			catch (Exception e) {
+				if (error == null) {
+					error = e;
+				}
+			}
+			finally {
+				cas.reset();
+				pool.add(cas);
+			}
+		}
+	}
+
+	/**
+	 * Copy a CAS into an empty one.
+	 */
+	private static void copy(CAS source, CAS target) {
+		// The copier copies the document annotation onto the one of the
+		// target, which would otherwise be created as a plain
+		// DocumentAnnotation and could not hold e.g. DocumentMetaData:
+		// create it in advance with the type of the source, as readers do.
+		AnnotationFS documentAnnotation = source.getDocumentAnnotation();
+		target.addFsToIndexes(target.createAnnotation(documentAnnotation.getType(), 0, 0));
+		CasCopier.copyCas(source, target, true);
+	}
+
+	private static CAS take(BlockingQueue<CAS> pool) throws IOException {
+		try {
+			return pool.take();
+		}
+		catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static void awaitTermination(ExecutorService worker) throws IOException {
+		try {
+			worker.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static ExecutorService newWorker(final String name) {
+		return Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "FanOut-" + name);
+			}
+		});
+	}
+}
@@ -0,0 +1,191 @@
+package it.unitn.ainlp.pipeline;
+
+import static java.util.Arrays.asList;
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
+import static org.apache.uima.fit.factory.CollectionReaderFactory.createReader;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.collection.CollectionReaderDescription;
+import org.apache.uima.fit.util.LifeCycleUtil;
+import org.apache.uima.resource.metadata.MetaDataObject;
+import org.apache.uima.util.CasCreationUtils;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Paragraph;
+
+/**
+ * Runs a pipeline on micro-batches of documents.
+ *
+ * When the documents are very short (tweets, titles, etc...) most of the
+ * time is spent in the per-CAS and per-call overhead of the analysis
+ * engines rather than in the actual tagging. This pipeline reads several
+ * documents from the collection reader, concatenates them into a single
+ * merged CAS, runs the taggers (segmenter, lemmatizer, POS tagger,
+ * etc...) once over the whole batch, and then scatters the resulting
+ * annotations back into the CAS of each document, which is finally passed
+ * to the consumer (e.g. the name finders and the
+ * {@link it.unitn.ainlp.writer.ConllWriter}).
+ *
+ * A batch is closed as soon as one of the following bounds is reached:
+ * <ul>
+ * <li>the maximum number of documents;</li>
+ * <li>the maximum number of characters;</li>
+ * <li>the maximum latency, i.e. the time elapsed since the first document
+ *     of the batch was read.</li>
+ * </ul>
+ * Small bounds give a low latency, large bounds give a high throughput.
+ *
+ * Each document is marked in the merged CAS by a {@link #ZONE_TYPE}
+ * annotation. The segmenter must be configured to use it as zone type
+ * (e.g. with <code>OpenNlpSegmenter.PARAM_ZONE_TYPES</code>), so that no
+ * sentence crosses the boundary between two documents.
+ *
+ * Engines that keep state from one sentence to the next until the end of
+ * the CAS, such as the OpenNLP name finders with their adaptive data, must
+ * be part of the consumer rather than of the taggers: on the merged CAS
+ * their results would depend on the other documents of the batch.
+ */
+public class MicroBatchPipeline
+{
+	/** Type of the annotations marking each document in the merged CAS. */
+	public static final String ZONE_TYPE = Paragraph.class.getName();
+
+	/** Text inserted between two documents in the merged CAS. */
+	private static final String SEPARATOR = "\n\n";
+
+	private final CollectionReaderDescription readerDesc;
+
+	private final AnalysisEngineDescription taggersDesc;
+
+	private final AnalysisEngineDescription consumerDesc;
+
+	private int maxDocuments = 64;
+
+	private int maxCharacters = 64 * 1024;
+
+	private long maxLatencyMillis = 1000;
+
+	/**
+	 * @param reader the collection reader.
+	 * @param taggers the engines run on the merged CAS.
+	 * @param consumer the engines run on the CAS of each document.
+	 */
+	public MicroBatchPipeline(CollectionReaderDescription reader,
+			AnalysisEngineDescription taggers, AnalysisEngineDescription consumer) {
+		this.readerDesc = reader;
+		this.taggersDesc = taggers;
+		this.consumerDesc = consumer;
+	}
+
+	/** Set the maximum number of documents in a batch (default: 64). */
+	public MicroBatchPipeline setMaxDocuments(int maxDocuments) {
+		if (maxDocuments < 1) {
+			throw new IllegalArgumentException("Maximum number of documents must be at least 1: "
+					+ maxDocuments);
+		}
+		this.maxDocuments = maxDocuments;
+		return this;
+	}
+
+	/** Set the maximum number of characters in a batch (default: 65536). */
+	public MicroBatchPipeline setMaxCharacters(int maxCharacters) {
+		if (maxCharacters < 1) {
+			throw new IllegalArgumentException("Maximum number of characters must be at least 1: "
+					+ maxCharacters);
+		}
+		this.maxCharacters = maxCharacters;
+		return this;
+	}
+
+	/**
+	 * Set the maximum time a document waits for its batch to be closed,
+	 * in milliseconds (default: 1000).
+	 */
+	public MicroBatchPipeline setMaxLatency(long maxLatencyMillis) {
+		if (maxLatencyMillis < 0) {
+			throw new IllegalArgumentException("Maximum latency can't be negative: "
+					+ maxLatencyMillis);
+		}
+		this.maxLatencyMillis = maxLatencyMillis;
+		return this;
+	}
+
+	/**
+	 * Process all the documents of the collection.
+	 */
+	public void run() throws UIMAException, IOException {
+		CollectionReader reader = createReader(readerDesc);
+		AnalysisEngine taggers = createEngine(taggersDesc);
+		AnalysisEngine consumer = createEngine(consumerDesc);
+
+		try {
+			// All the CASes share the type system of the whole pipeline.
+			List<MetaDataObject> metaData = asList((MetaDataObject) reader.getMetaData(),
+					taggers.getMetaData(), consumer.getMetaData());
+			CAS merged = CasCreationUtils.createCas(metaData);
+			CAS[] docs = new CAS[maxDocuments];
+			for (int i = 0; i < maxDocuments; i++) {
+				docs[i] = CasCreationUtils.createCas(metaData);
+			}
+
+			Type zoneType = merged.getTypeSystem().getType(ZONE_TYPE);
+			AnnotationScatter scatter = new AnnotationScatter(merged, zoneType);
+			int[] starts = new int[maxDocuments];
+			int[] ends = new int[maxDocuments];
+			StringBuilder text = new StringBuilder();
+
+			while (reader.hasNext()) {
+				// Fill the batch.
+				int count = 0;
+				long first = System.nanoTime();
+				long maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+				text.setLength(0);
+				do {
+					reader.getNext(docs[count]);
+					if (count > 0) {
+						text.append(SEPARATOR);
+					}
+					starts[count] = text.length();
+					text.append(docs[count].getDocumentText());
+					ends[count] = text.length();
+					count++;
+				}
+				while (count < maxDocuments && text.length() < maxCharacters
+						&& System.nanoTime() - first < maxLatencyNanos && reader.hasNext());
+
+				// Tag the whole batch at once.
+				merged.setDocumentText(text.toString());
+				merged.setDocumentLanguage(docs[0].getDocumentLanguage());
+				for (int i = 0; i < count; i++) {
+					merged.addFsToIndexes(merged.createAnnotation(zoneType, starts[i], ends[i]));
+				}
+				taggers.process(merged);
+
+				// Copy the results back and consume each document.
+				scatter.scatter(docs, starts, ends, count);
+				for (int i = 0; i < count; i++) {
+					consumer.process(docs[i]);
+					docs[i].reset();
+				}
+				merged.reset();
+			}
+
+			LifeCycleUtil.collectionProcessComplete(taggers);
+			LifeCycleUtil.collectionProcessComplete(consumer);
+		}
+		finally {
+			LifeCycleUtil.close(reader);
+			LifeCycleUtil.destroy(reader);
+			LifeCycleUtil.destroy(taggers);
+			LifeCycleUtil.destroy(consumer);
+		}
+	}
+}
@@ -0,0 +1,538 @@
+/*******************************************************************************
+ * Copyright 2016
+ * iKernels group
+ * University of Trento
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package it.unitn.ainlp.reader;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Pattern;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.uima.UimaContext;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.fit.component.JCasCollectionReader_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.descriptor.TypeCapability;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Progress;
+import org.apache.uima.util.ProgressImpl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+
+/**
+ * <p>Reads documents straight out of compressed files and archives, without
+ * decompressing them to disk first.</p>
+ *
+ * <p>The source location is either a file or a directory, in which case
+ * all the <i>.txt</i>, compressed and archive files in the directory are
+ * read in alphabetical order. The last part of the location may also
+ * contain the <i>*</i> and <i>?</i> wildcards (e.g. <i>corpus/*.gz</i>),
+ * in which case the matching files are read in alphabetical order. The format
+ * of each file is guessed from its name:</p>
+ * <ul>
+ * <li><i>.gz</i>, <i>.bz2</i> and <i>.xz</i> files are decompressed on the
+ *     fly (<i>.tgz</i> stands for <i>.tar.gz</i>);</li>
+ * <li><i>.tar</i> archives contain one document per entry;</li>
+ * <li><i>.jsonl</i> files contain one document per line, as a JSON object
+ *     with the text in the {@link #PARAM_TEXT_FIELD} field and,
+ *     optionally, an identifier in the {@link #PARAM_ID_FIELD} field;</li>
+ * <li>any other file is a single plain text document.</li>
+ * </ul>
+ *
+ * <p>Decompression and parsing run on a separate thread, which hands the
+ * documents to the pipeline through a bounded queue.</p>
+ *
+ * <p>The {@link DocumentMetaData} of each document is set as if the files
+ * had been decompressed in place and read by the <code>TextReader</code>:
+ * <i>doc.txt.gz</i> becomes <i>doc.txt</i>, the entry <i>a/b.txt</i> of
+ * <i>corpus.tar.gz</i> becomes <i>a/b.txt</i>, and the line with id
+ * <i>42</i> of <i>tweets.jsonl.xz</i> becomes <i>tweets/42</i>, so that
+ * the paths of the files written by the <code>ConllWriter</code> do not
+ * depend on how the corpus is stored. Archive entries with an absolute path
+ * or going up with <i>..</i> are skipped, and ids that are not plain file
+ * names are replaced by the line number, so that no file is written outside
+ * of the target location of the writers.</p>
+ */
+@TypeCapability(outputs = { "de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData" })
+public class CompressedTextReader
+    extends JCasCollectionReader_ImplBase
+{
+    /**
+     * Name of configuration parameter that contains the file or directory to read.
+     */
+    public static final String PARAM_SOURCE_LOCATION = "sourceLocation";
+    @ConfigurationParameter(name = PARAM_SOURCE_LOCATION, mandatory = true)
+    private File sourceLocation;
+
+    /**
+     * Name of configuration parameter that contains the character encoding used by the input files.
+     */
+    public static final String PARAM_ENCODING = "sourceEncoding";
+    @ConfigurationParameter(name = PARAM_ENCODING, mandatory = true, defaultValue = "UTF-8")
+    private String encoding;
+
+    public static final String PARAM_LANGUAGE = "language";
+    @ConfigurationParameter(name = PARAM_LANGUAGE, mandatory = false)
+    private String language;
+
+    /**
+     * Name of the JSON field containing the text of a document.
+     */
+    public static final String PARAM_TEXT_FIELD = "textField";
+    @ConfigurationParameter(name = PARAM_TEXT_FIELD, mandatory = true, defaultValue = "text")
+    private String textField;
+
+    /**
+     * Name of the JSON field containing the identifier of a document. If it
+     * is missing, the line number is used instead.
+     */
+    public static final String PARAM_ID_FIELD = "idField";
+    @ConfigurationParameter(name = PARAM_ID_FIELD, mandatory = true, defaultValue = "id")
+    private String idField;
+
+    /**
+     * Maximum number of documents decompressed ahead of the pipeline.
+     */
+    public static final String PARAM_QUEUE_SIZE = "queueSize";
+    @ConfigurationParameter(name = PARAM_QUEUE_SIZE, mandatory = true, defaultValue = "64")
+    private int queueSize;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] COMPRESSION_SUFFIXES = { ".gz", ".bz2", ".xz" };
+
+    private static final String[] ARCHIVE_SUFFIXES = { ".tar", ".tgz", ".jsonl" };
+
+    /** Marks the end of the collection in the queue. */
+    private static final Document END = new Document(null, null, null);
+
+    private BlockingQueue<Document> queue;
+
+    private Thread producer;
+
+    /** Error raised by the producer, reported when the queue is drained. */
+    private volatile Throwable error;
+
+    private Document next;
+
+    private int completed;
+
+    /**
+     * Check if the given file is stored in one of the formats handled by
+     * this reader and not by the <code>TextReader</code>, or if it is a
+     * directory containing such files.
+     */
+    public static boolean accepts(String location) {
+        File file = new File(location);
+        if (isPattern(file.getName())) {
+            for (File child : matching(file)) {
+                if (isCompressed(child.getName())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    if (child.isFile() && !child.isHidden() && isCompressed(child.getName())) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        return isCompressed(location);
+    }
+
+    private static boolean isPattern(String name) {
+        return name.indexOf('*') >= 0 || name.indexOf('?') >= 0;
+    }
+
+    /**
+     * Return the files matching the wildcards in the last part of the
+     * given location, in alphabetical order.
+     */
+    private static List<File> matching(File location) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : location.getName().toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            }
+            else if (c == '?') {
+                regex.append('.');
+            }
+            else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        Pattern pattern = Pattern.compile(regex.toString());
+
+        List<File> files = new ArrayList<File>();
+        File[] children = location.getAbsoluteFile().getParentFile().listFiles();
+        if (children != null) {
+            Arrays.sort(children);
+            for (File child : children) {
+                if (child.isFile() && !child.isHidden()
+                        && pattern.matcher(child.getName()).matches()) {
+                    files.add(child);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static boolean isCompressed(String fileName) {
+        String name = fileName.toLowerCase();
+        for (String suffix : COMPRESSION_SUFFIXES) {
+            if (name.endsWith(suffix)) {
+                return true;
+            }
+        }
+        for (String suffix : ARCHIVE_SUFFIXES) {
+            if (name.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void initialize(UimaContext aContext)
+        throws ResourceInitializationException
+    {
+        super.initialize(aContext);
+
+        final List<File> files = new ArrayList<File>();
+        final File baseDir;
+        if (isPattern(sourceLocation.getName())) {
+            baseDir = sourceLocation.getAbsoluteFile().getParentFile();
+            files.addAll(matching(sourceLocation));
+        }
+        else if (sourceLocation.isDirectory()) {
+            baseDir = sourceLocation;
+            File[] children = sourceLocation.listFiles();
+            Arrays.sort(children);
+            for (File child : children) {
+                if (child.isFile() && !child.isHidden()
+                        && (isCompressed(child.getName()) || child.getName().endsWith(".txt"))) {
+                    files.add(child);
+                }
+            }
+        }
+        else if (sourceLocation.isFile()) {
+            baseDir = sourceLocation.getAbsoluteFile().getParentFile();
+            files.add(sourceLocation);
+        }
+        else {
+            throw new ResourceInitializationException(new IOException("No such file or directory ["
+                    + sourceLocation + "]"));
+        }
+
+        queue = new ArrayBlockingQueue<Document>(queueSize);
+        producer = new Thread("CompressedTextReader") {
+            @Override
+            public void run()
+            {
+                boolean closed = false;
+                try {
+                    for (File file : files) {
+                        read(baseDir, file);
+                    }
+                }
+                catch (InterruptedException e) {
+                    closed = true;
+                }
+                catch (Throwable e) {
+                    // errors included (e.g. out of memory on a huge entry):
+                    // the pipeline must not wait forever for the end
+                    error = e;
+                }
+                finally {
+                    if (!closed) {
+                        try {
+                            queue.put(END);
+                        }
+                        catch (InterruptedException e) {
+                            // the reader has been closed
+                        }
+                    }
+                }
+            }
+        };
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    @Override
+    public boolean hasNext()
+        throws IOException, CollectionException
+    {
+        if (next == null) {
+            try {
+                next = queue.take();
+            }
+            catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+        if (next == END && error != null) {
+            throw new CollectionException(error);
+        }
+        return next != END;
+    }
+
+    @Override
+    public void getNext(JCas aJCas)
+        throws IOException, CollectionException
+    {
+        if (!hasNext()) {
+            throw new CollectionException(new IllegalStateException("No more documents"));
+        }
+        Document doc = next;
+        next = null;
+
+        aJCas.setDocumentText(doc.text);
+        if (language != null) {
+            aJCas.setDocumentLanguage(language);
+        }
+
+        String baseUri = doc.baseDir.toURI().toString();
+        DocumentMetaData meta = DocumentMetaData.create(aJCas);
+        meta.setDocumentId(doc.path);
+        meta.setDocumentTitle(new File(doc.path).getName());
+        meta.setDocumentUri(new File(doc.baseDir, doc.path).toURI().toString());
+        meta.setDocumentBaseUri(baseUri);
+        meta.setCollectionId(baseUri);
+
+        completed++;
+    }
+
+    @Override
+    public Progress[] getProgress()
+    {
+        // the total number of documents is not known until the end
+        return new Progress[] { new ProgressImpl(completed, -1, Progress.ENTITIES) };
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        if (producer != null) {
+            producer.interrupt();
+        }
+        super.close();
+    }
+
+    /**
+     * Read all the documents of a file and put them into the queue.
+     */
+    private void read(File baseDir, File file)
+        throws IOException, InterruptedException
+    {
+        String name = file.getName();
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            // decompress
+            String lower = name.toLowerCase();
+            if (lower.endsWith(".tgz")) {
+                in = new GzipCompressorInputStream(in, true);
+                name = name.substring(0, name.length() - 4) + ".tar";
+            }
+            else if (lower.endsWith(".gz")) {
+                in = new GzipCompressorInputStream(in, true);
+                name = name.substring(0, name.length() - 3);
+            }
+            else if (lower.endsWith(".bz2")) {
+                in = new BZip2CompressorInputStream(in, true);
+                name = name.substring(0, name.length() - 4);
+            }
+            else if (lower.endsWith(".xz")) {
+                in = new XZCompressorInputStream(in, true);
+                name = name.substring(0, name.length() - 3);
+            }
+
+            // split into documents
+            lower = name.toLowerCase();
+            if (lower.endsWith(".tar")) {
+                readTar(baseDir, in);
+            }
+            else if (lower.endsWith(".jsonl")) {
+                readJsonLines(baseDir, name.substring(0, name.length() - 6), in);
+            }
+            else {
+                queue.put(new Document(baseDir, name, IOUtils.toString(in, encoding)));
+            }
+        }
+        finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void readTar(File baseDir, InputStream in)
+        throws IOException, InterruptedException
+    {
+        TarArchiveInputStream tar = new TarArchiveInputStream(in, encoding);
+        TarArchiveEntry entry;
+        while ((entry = tar.getNextTarEntry()) != null) {
+            if (!entry.isFile()) {
+                continue;
+            }
+            String path = relativePath(entry.getName());
+            if (path == null) {
+                getLogger().warn("Skipping the archive entry [" + entry.getName()
+                        + "]: its path leads outside of the archive");
+                continue;
+            }
+            // the stream ends at the end of the entry
+            queue.put(new Document(baseDir, path, IOUtils.toString(tar, encoding)));
+        }
+    }
+
+    private void readJsonLines(File baseDir, String prefix, InputStream in)
+        throws IOException, InterruptedException
+    {
+        JsonFactory factory = new JsonFactory();
+        BufferedReader lines = new BufferedReader(new InputStreamReader(in, encoding), BUFFER_SIZE);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            String id = null;
+            String text = null;
+            JsonParser parser = factory.createParser(line);
+            try {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IOException("Line " + lineNumber + " of [" + prefix
+                            + "] is not a JSON object");
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    // a null field counts as missing
+                    boolean scalar = value.isScalarValue() && value != JsonToken.VALUE_NULL;
+                    if (scalar && field.equals(textField)) {
+                        text = parser.getText();
+                    }
+                    else if (scalar && field.equals(idField)) {
+                        id = parser.getText();
+                    }
+                    else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            finally {
+                parser.close();
+            }
+
+            if (text == null) {
+                throw new IOException("Line " + lineNumber + " of [" + prefix
+                        + "] has no field [" + textField + "]");
+            }
+            if (id != null && !isFileName(id)) {
+                getLogger().warn("Line " + lineNumber + " of [" + prefix + "] has an id that is "
+                        + "not a valid file name [" + id + "], using the line number instead");
+                id = null;
+            }
+            String path = prefix + "/" + (id != null ? id : Integer.toString(lineNumber));
+            queue.put(new Document(baseDir, path, text));
+        }
+    }
+
+    /**
+     * Normalize the path of an archive entry, so that it is a relative path
+     * made of '/' separated names. Return null if the path is absolute or
+     * goes up with "..", as the writers would then write outside of their
+     * target location.
+     */
+    private static String relativePath(String entryName)
+    {
+        if (entryName.startsWith("/") || entryName.startsWith("\\")
+                || entryName.matches("^[A-Za-z]:.*")) {
+            return null;
+        }
+        StringBuilder path = new StringBuilder();
+        for (String name : entryName.split("[/\\\\]")) {
+            if (name.isEmpty() || name.equals(".")) {
+                continue;
+            }
+            if (name.equals("..")) {
+                return null;
+            }
+            if (path.length() > 0) {
+                path.append('/');
+            }
+            path.append(name);
+        }
+        return path.length() > 0 ? path.toString() : null;
+    }
+
+    /**
+     * Check if a JSON id can be used as the name of a file.
+     */
+    private static boolean isFileName(String id)
+    {
+        return !id.isEmpty() && !id.equals(".") && !id.equals("..") && id.indexOf('/') < 0
+                && id.indexOf('\\') < 0 && id.indexOf(':') < 0;
+    }
+
+    /** A document read by the producer thread. */
+    private static final class Document
+    {
+        /** Directory the archive is stored in. */
+        final File baseDir;
+        /** Path of the document relative to baseDir, as if decompressed in place. */
+        final String path;
+        final String text;
+
+        Document(File baseDir, String path, String text)
+        {
+            this.baseDir = baseDir;
+            this.path = path;
+            this.text = text;
+        }
+    }
+}
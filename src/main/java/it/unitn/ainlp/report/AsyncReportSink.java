@@ -0,0 +1,101 @@
+package it.unitn.ainlp.report;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.uima.jcas.JCas;
+
+/**
+ * Formats and writes the reports on a background thread, so that the
+ * pipeline can process the next document in the meanwhile.
+ *
+ * The results of each document are copied into a {@link DocumentReport}
+ * before {@link #report(JCas)} returns, since the JCas is reused for the
+ * next document. At most <i>capacity</i> reports wait to be written; when
+ * the queue is full the pipeline waits for the writer.
+ */
+public class AsyncReportSink
+	implements ReportSink
+{
+	/** Marks the end of the reports in the queue. */
+	private static final DocumentReport END = new DocumentReport();
+
+	private final WriterReportSink delegate;
+
+	private final BlockingQueue<DocumentReport> queue;
+
+	private final Thread writer;
+
+	/** Error raised by the writer thread. */
+	private volatile Throwable error;
+
+	public AsyncReportSink(WriterReportSink delegate, int capacity) {
+		this.delegate = delegate;
+		this.queue = new ArrayBlockingQueue<DocumentReport>(capacity);
+		this.writer = new Thread("AsyncReportSink") {
+			@Override
+			public void run() {
+				try {
+					DocumentReport report;
+					while ((report = queue.take()) != END) {
+						// after an error keep draining the queue, so that
+						// the pipeline is not blocked
+						if (error == null) {
+							try {
+								AsyncReportSink.this.delegate.write(report);
+							}
+							catch (Throwable e) {
+								// formatting errors included: the thread
+								// must not die, or the pipeline would block
+								error = e;
+							}
+						}
+					}
+				}
+				catch (InterruptedException e) {
+					// closed
+				}
+			}
+		};
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	@Override
+	public void report(JCas jcas) throws IOException {
+		checkError();
+		put(DocumentReport.of(jcas));
+	}
+
+	@Override
+	public void close() throws IOException {
+		put(END);
+		try {
+			writer.join();
+		}
+		catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+		checkError();
+		delegate.close();
+	}
+
+	private void put(DocumentReport report) throws IOException {
+		try {
+			queue.put(report);
+		}
+		catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private void checkError() throws IOException {
+		if (error instanceof IOException) {
+			throw (IOException) error;
+		}
+		if (error != null) {
+			throw new IOException(error);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package it.unitn.ainlp.report;
+
+import static org.apache.uima.fit.util.JCasUtil.indexCovered;
+import static org.apache.uima.fit.util.JCasUtil.select;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.jcas.JCas;
+
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.tudarmstadt.ukp.dkpro.core.api.syntax.type.PennTree;
+
+/**
+ * A snapshot of the analysis results of a document: for each sentence,
+ * its tokens, lemmas, POSs, named entities and constituency tree.
+ *
+ * The snapshot only contains strings, so it can be formatted after the
+ * JCas has been reset and reused for the next document.
+ */
+public class DocumentReport
+{
+	/** Analysis results of a single sentence. */
+	public static final class SentenceReport
+	{
+		/** For each token: covered text, lemma, coarse POS, POS. */
+		final List<String[]> tokens = new ArrayList<String[]>();
+		/** For each named entity: value, covered text. */
+		final List<String[]> entities = new ArrayList<String[]>();
+		/** The parse tree in Penn format, or null if not available. */
+		String pennTree;
+	}
+
+	final List<SentenceReport> sentences = new ArrayList<SentenceReport>();
+
+	/**
+	 * Take a snapshot of the given JCas.
+	 */
+	public static DocumentReport of(JCas jcas) {
+		// Index the annotations covered by each sentence in a single pass.
+		Map<Sentence, Collection<Token>> tokens = indexCovered(jcas, Sentence.class, Token.class);
+		Map<Sentence, Collection<NamedEntity>> entities = indexCovered(jcas, Sentence.class,
+				NamedEntity.class);
+		Map<Sentence, Collection<PennTree>> trees = indexCovered(jcas, Sentence.class, PennTree.class);
+
+		DocumentReport report = new DocumentReport();
+		for (Sentence sentence : select(jcas, Sentence.class)) {
+			SentenceReport s = new SentenceReport();
+
+			for (Token token : get(tokens, sentence)) {
+				s.tokens.add(new String[] {
+						token.getCoveredText(),
+						token.getLemma() != null ? token.getLemma().getValue() : "",
+						token.getPos() != null ? token.getPos().getClass().getSimpleName() : "",
+						token.getPos() != null ? token.getPos().getPosValue() : "" });
+			}
+
+			for (NamedEntity ne : get(entities, sentence)) {
+				s.entities.add(new String[] { ne.getValue(), ne.getCoveredText() });
+			}
+
+			Collection<PennTree> sentenceTrees = get(trees, sentence);
+			if (!sentenceTrees.isEmpty()) {
+				s.pennTree = sentenceTrees.iterator().next().getPennTree();
+			}
+
+			report.sentences.add(s);
+		}
+		return report;
+	}
+
+	private static <T> Collection<T> get(Map<Sentence, Collection<T>> index, Sentence sentence) {
+		Collection<T> covered = index.get(sentence);
+		return covered != null ? covered : Collections.<T>emptyList();
+	}
+}
@@ -0,0 +1,20 @@
+package it.unitn.ainlp.report;
+
+import org.apache.uima.jcas.JCas;
+
+/**
+ * Discards all the reports.
+ */
+public class NullReportSink
+	implements ReportSink
+{
+	@Override
+	public void report(JCas jcas) {
+		// nothing to do
+	}
+
+	@Override
+	public void close() {
+		// nothing to do
+	}
+}
@@ -0,0 +1,90 @@
+package it.unitn.ainlp.report;
+
+import it.unitn.ainlp.report.DocumentReport.SentenceReport;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Formats a {@link DocumentReport} as a table of tokens, lemmas and POSs,
+ * followed by the named entities and the parse tree of each sentence.
+ *
+ * The output is the same as the one produced by <code>printf</code> with
+ * left-justified <code>%-16s</code> and <code>%-10s</code> columns, but
+ * the padding is done by hand, since <code>String.format</code> parses the
+ * format string and allocates a new formatter at each call.
+ */
+public class ReportFormatter
+{
+	private static final String NL = System.lineSeparator();
+
+	private static final String SPACES = "                ";
+
+	public void format(DocumentReport report, Writer out) throws IOException {
+		for (SentenceReport sentence : report.sentences) {
+			out.write(NL);
+			out.write("== Sentence ==");
+			out.write(NL);
+			tokenRow(out, "TOKEN", "LEMMA", "CPOS", "POS");
+
+			// Print tokens, lemmas, chunk POSs ad POSs
+			for (String[] token : sentence.tokens) {
+				tokenRow(out, token[0], token[1], token[2], token[3]);
+			}
+
+			// Print named entities
+			out.write(NL);
+			out.write("  -- Named Entities --");
+			out.write(NL);
+			entityRow(out, "ENTITY", "TOKENS");
+			for (String[] entity : sentence.entities) {
+				entityRow(out, entity[0], entity[1]);
+			}
+
+			// Print constituency-based parse trees in Penn format
+			out.write(NL);
+			out.write("  -- PennTree --");
+			out.write(NL);
+			out.write("  ");
+			out.write(sentence.pennTree != null ? sentence.pennTree : "");
+			out.write(NL);
+			out.write(NL);
+		}
+	}
+
+	/** Same as <code>printf("  %-16s %-10s %-10s %-10s %n", ...)</code>. */
+	private static void tokenRow(Writer out, String token, String lemma, String cpos, String pos)
+		throws IOException
+	{
+		out.write("  ");
+		pad(out, token, 16);
+		out.write(' ');
+		pad(out, lemma, 10);
+		out.write(' ');
+		pad(out, cpos, 10);
+		out.write(' ');
+		pad(out, pos, 10);
+		out.write(' ');
+		out.write(NL);
+	}
+
+	/** Same as <code>printf("  %-16s %-10s%n", ...)</code>. */
+	private static void entityRow(Writer out, String entity, String tokens) throws IOException {
+		out.write("  ");
+		pad(out, entity, 16);
+		out.write(' ');
+		pad(out, tokens, 10);
+		out.write(NL);
+	}
+
+	/** Write the value left-justified in a column of the given width. */
+	private static void pad(Writer out, String value, int width) throws IOException {
+		if (value == null) {
+			value = "null";
+		}
+		out.write(value);
+		for (int n = width - value.length(); n > 0; n -= SPACES.length()) {
+			out.write(SPACES, 0, Math.min(n, SPACES.length()));
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package it.unitn.ainlp.report;
+
+import java.io.IOException;
+
+import org.apache.uima.jcas.JCas;
+
+/**
+ * Receives the analysis results of each document produced by a pipeline,
+ * e.g. to print them to the console.
+ */
+public interface ReportSink
+{
+	/**
+	 * Report the analysis results of a document. The JCas may be reset
+	 * as soon as this method returns.
+	 */
+	void report(JCas jcas) throws IOException;
+
+	/**
+	 * Flush the pending reports and release the resources of the sink.
+	 */
+	void close() throws IOException;
+}
@@ -0,0 +1,44 @@
+package it.unitn.ainlp.report;
+
+import java.io.IOException;
+
+import org.apache.uima.jcas.JCas;
+
+/**
+ * Reports only one document out of every <i>n</i>, starting from the
+ * first one. The other documents are not even copied, so the cost of
+ * reporting them is close to zero.
+ */
+public class SampledReportSink
+	implements ReportSink
+{
+	private final ReportSink delegate;
+
+	private final int every;
+
+	private long count;
+
+	/**
+	 * @param delegate the sink the sampled documents are reported to.
+	 * @param every the sampling interval, at least 1.
+	 */
+	public SampledReportSink(ReportSink delegate, int every) {
+		if (every < 1) {
+			throw new IllegalArgumentException("Sampling interval must be at least 1: " + every);
+		}
+		this.delegate = delegate;
+		this.every = every;
+	}
+
+	@Override
+	public void report(JCas jcas) throws IOException {
+		if (count++ % every == 0) {
+			delegate.report(jcas);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		delegate.close();
+	}
+}
@@ -0,0 +1,55 @@
+package it.unitn.ainlp.report;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.uima.jcas.JCas;
+
+/**
+ * Formats the reports with a {@link ReportFormatter} and writes them
+ * to a character stream.
+ */
+public class WriterReportSink
+	implements ReportSink
+{
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Writer out;
+
+	private final ReportFormatter formatter = new ReportFormatter();
+
+	public WriterReportSink(Writer out) {
+		this.out = out;
+	}
+
+	/**
+	 * Create a sink writing to the standard output through a large
+	 * UTF-8 buffer, which is only flushed when it is full or when the
+	 * sink is closed.
+	 */
+	public static WriterReportSink console() throws IOException {
+		return new WriterReportSink(new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(FileDescriptor.out), "UTF-8"), BUFFER_SIZE));
+	}
+
+	@Override
+	public void report(JCas jcas) throws IOException {
+		write(DocumentReport.of(jcas));
+	}
+
+	/**
+	 * Write a snapshot of the results of a document.
+	 */
+	public void write(DocumentReport report) throws IOException {
+		formatter.format(report, out);
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.flush();
+	}
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright 2016
+ * iKernels group
+ * University of Trento
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package it.unitn.ainlp.watchdog;
+
+import static org.apache.uima.fit.util.JCasUtil.indexCovered;
+import static org.apache.uima.fit.util.JCasUtil.select;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.descriptor.TypeCapability;
+import org.apache.uima.jcas.JCas;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * <p>Re-splits the sentences having more than {@link #PARAM_MAX_TOKENS}
+ * tokens, such as the runaway "sentences" produced by the segmenter on
+ * tables or on text without punctuation. The parser and the lemmatizer may
+ * take minutes on them.</p>
+ *
+ * <p>The fallback rule is the following: each piece ends at the last
+ * <code>; : , --</code> token found in the second half of the window of
+ * {@link #PARAM_MAX_TOKENS} tokens, or, if there is none, right at the end
+ * of the window.</p>
+ */
+@TypeCapability(inputs = { "de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence",
+        "de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token" },
+        outputs = { "de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence" })
+public class SentenceResplitter
+    extends JCasAnnotator_ImplBase
+{
+    /**
+     * Maximum number of tokens in a sentence.
+     */
+    public static final String PARAM_MAX_TOKENS = "maxTokens";
+    @ConfigurationParameter(name = PARAM_MAX_TOKENS, mandatory = true, defaultValue = "150")
+    private int maxTokens;
+
+    private static final String[] WEAK_BOUNDARIES = { ";", ":", ",", "--" };
+
+    @Override
+    public void process(JCas aJCas)
+        throws AnalysisEngineProcessException
+    {
+        Map<Sentence, List<Token>> longSentences = longSentences(aJCas, maxTokens);
+        for (Sentence sentence : longSentences.keySet()) {
+            List<Token> tokens = longSentences.get(sentence);
+            int start = 0;
+            while (start < tokens.size()) {
+                int end = Math.min(start + maxTokens, tokens.size());
+                if (end < tokens.size()) {
+                    end = split(tokens, start, end);
+                }
+                new Sentence(aJCas, tokens.get(start).getBegin(), tokens.get(end - 1).getEnd())
+                        .addToIndexes();
+                start = end;
+            }
+            sentence.removeFromIndexes();
+
+            getLogger().warn("Re-split a sentence of " + tokens.size() + " tokens at offset "
+                    + sentence.getBegin());
+        }
+    }
+
+    /**
+     * Return the sentences having more than maxTokens tokens, with their
+     * tokens, in document order. The sentences are collected first, since
+     * the index can't be modified while iterating.
+     */
+    static Map<Sentence, List<Token>> longSentences(JCas aJCas, int maxTokens)
+    {
+        Map<Sentence, Collection<Token>> index = indexCovered(aJCas, Sentence.class, Token.class);
+        Map<Sentence, List<Token>> longSentences = new LinkedHashMap<Sentence, List<Token>>();
+        for (Sentence sentence : select(aJCas, Sentence.class)) {
+            Collection<Token> tokens = index.get(sentence);
+            if (tokens != null && tokens.size() > maxTokens) {
+                longSentences.put(sentence, new ArrayList<Token>(tokens));
+            }
+        }
+        return longSentences;
+    }
+
+    /**
+     * Return the end (exclusive) of the piece starting at start, which
+     * can't go beyond end.
+     */
+    private static int split(List<Token> tokens, int start, int end)
+    {
+        for (int i = end - 1; i >= start + (end - start) / 2; i--) {
+            String text = tokens.get(i).getCoveredText();
+            for (String boundary : WEAK_BOUNDARIES) {
+                if (text.equals(boundary)) {
+                    return i + 1;
+                }
+            }
+        }
+        return end;
+    }
+}
@@ -0,0 +1,562 @@
+package it.unitn.ainlp.watchdog;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
+import static org.apache.uima.fit.factory.CollectionReaderFactory.createReader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.UIMARuntimeException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.analysis_engine.metadata.FixedFlow;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.impl.LowLevelCAS;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.collection.CollectionReaderDescription;
+import org.apache.uima.fit.util.LifeCycleUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.TOP;
+import org.apache.uima.resource.metadata.MetaDataObject;
+import org.apache.uima.util.CasCreationUtils;
+
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * <p>Runs a pipeline under a watchdog, so that a single pathological
+ * document (a giant table, a runaway sentence with no punctuation, etc...)
+ * can't stall the whole collection.</p>
+ *
+ * <p>Each engine of the analysis aggregate is a stage, which is run on a
+ * worker thread under a time budget:</p>
+ * <ul>
+ * <li>the document budget bounds the total time spent on a document by
+ *     all the stages;</li>
+ * <li>the stage budget per sentence scales the budget of each stage with
+ *     the length of the document: once the document has been segmented a
+ *     stage gets at most <i>stage budget per sentence &times; number of
+ *     sentences</i> in total. It does not bound the time spent on any
+ *     single sentence, which is what the re-splitting of long sentences
+ *     is for.</li>
+ * </ul>
+ *
+ * <p>When a stage exceeds its budget it is interrupted and the document
+ * goes on with the next stage, without the results of the offending one:
+ * the feature structures created by the stage are removed from the indexes
+ * and the references to them are cleared.
+ * Once the document budget is exhausted the remaining stages are skipped.
+ * If the stage does not stop within a grace period (many engines ignore
+ * interrupts) the document is abandoned: the worker thread, the engine
+ * instance and the CAS are left to the runaway stage and replaced by new
+ * ones. A stage that fails with an exception is skipped as well.</p>
+ *
+ * <p>Before any budget applies, sentences longer than the given number of
+ * tokens are re-split by the {@link SentenceResplitter} as soon as a stage
+ * (the segmenter) produces them.</p>
+ *
+ * <p>Every degradation is recorded in a tab-separated log with the
+ * document id, the stage, the action taken (<i>timeout</i>, <i>error</i>,
+ * <i>skipped</i>, <i>abandoned</i>), the elapsed time and the budget. Each
+ * re-split sentence is recorded as well, with the action <i>resplit</i>
+ * followed by the number of tokens and the offset of the sentence.</p>
+ *
+ * <p>The consumer (e.g. the writer) is run on each document that has not
+ * been abandoned, outside the watchdog. Since a degraded document may lack
+ * annotations the consumer relies on, a consumer failure is recorded
+ * (as an <i>error</i> of the consumer) and the document is skipped.</p>
+ */
+public class WatchdogPipeline
+	implements Iterable<JCas>
+{
+	/** Time given to an interrupted stage to give up. */
+	private static final long GRACE_MILLIS = 2000;
+
+	private final CollectionReaderDescription readerDesc;
+
+	private final List<String> stageNames = new ArrayList<String>();
+
+	private final List<AnalysisEngineDescription> stageDescs = new ArrayList<AnalysisEngineDescription>();
+
+	private final AnalysisEngineDescription consumerDesc;
+
+	private long documentBudgetMillis = 60000;
+
+	private long stageBudgetPerSentenceMillis = 5000;
+
+	private int maxSentenceTokens = 150;
+
+	private File logFile;
+
+	/**
+	 * @param reader the collection reader.
+	 * @param analysis the engines run under the watchdog. If it is an
+	 * 		aggregate, each of its engines is a separate stage.
+	 * @param consumer the engines run on each document after the analysis.
+	 */
+	public WatchdogPipeline(CollectionReaderDescription reader, AnalysisEngineDescription analysis,
+			AnalysisEngineDescription consumer)
+		throws UIMAException
+	{
+		this.readerDesc = reader;
+		this.consumerDesc = consumer;
+
+		if (analysis.isPrimitive()) {
+			stageNames.add(stageName(analysis));
+			stageDescs.add(analysis);
+		}
+		else {
+			FixedFlow flow = (FixedFlow) analysis.getAnalysisEngineMetaData().getFlowConstraints();
+			for (String key : flow.getFixedFlow()) {
+				AnalysisEngineDescription stage = (AnalysisEngineDescription) analysis
+						.getDelegateAnalysisEngineSpecifiers().get(key);
+				stageNames.add(stageName(stage));
+				stageDescs.add(stage);
+			}
+		}
+	}
+
+	/** Set the time budget of a document, in milliseconds (default: 60000). */
+	public WatchdogPipeline setDocumentBudget(long documentBudgetMillis) {
+		this.documentBudgetMillis = documentBudgetMillis;
+		return this;
+	}
+
+	/**
+	 * Set the time budget of each stage per sentence, in milliseconds
+	 * (default: 5000). A stage gets this budget times the number of
+	 * sentences of the document, as a whole: no single sentence is bounded.
+	 */
+	public WatchdogPipeline setStageBudgetPerSentence(long stageBudgetPerSentenceMillis) {
+		this.stageBudgetPerSentenceMillis = stageBudgetPerSentenceMillis;
+		return this;
+	}
+
+	/** Set the maximum number of tokens in a sentence (default: 150). */
+	public WatchdogPipeline setMaxSentenceTokens(int maxSentenceTokens) {
+		this.maxSentenceTokens = maxSentenceTokens;
+		return this;
+	}
+
+	/** Set the file the degradations are recorded to (default: none). */
+	public WatchdogPipeline setLog(File logFile) {
+		this.logFile = logFile;
+		return this;
+	}
+
+	/**
+	 * Process all the documents of the collection.
+	 */
+	public void run() {
+		for (Iterator<JCas> it = iterator(); it.hasNext();) {
+			it.next();
+		}
+	}
+
+	/**
+	 * Iterate over the processed documents. The JCas is reset when the
+	 * next document is requested.
+	 */
+	@Override
+	public Iterator<JCas> iterator() {
+		try {
+			return new WatchdogIterator();
+		}
+		catch (UIMAException e) {
+			throw new UIMARuntimeException(e);
+		}
+		catch (IOException e) {
+			throw new UIMARuntimeException(e);
+		}
+	}
+
+	private static String stageName(AnalysisEngineDescription desc) {
+		String name = desc.getAnnotatorImplementationName();
+		if (name == null) {
+			name = desc.getMetaData().getName();
+		}
+		return name.substring(name.lastIndexOf('.') + 1);
+	}
+
+	private class WatchdogIterator
+		implements Iterator<JCas>
+	{
+		private final CollectionReader reader;
+
+		private final AnalysisEngine[] stages;
+
+		private final AnalysisEngine resplitter;
+
+		private final AnalysisEngine consumer;
+
+		private final List<MetaDataObject> metaData = new ArrayList<MetaDataObject>();
+
+		private final PrintWriter log;
+
+		private ExecutorService worker;
+
+		private JCas jcas;
+
+		/** True if jcas holds a processed document not yet returned. */
+		private boolean pending;
+
+		/** True if jcas holds a document already returned by next(). */
+		private boolean returned;
+
+		private boolean completed;
+
+		private int abandoned;
+
+		private int degraded;
+
+		/** True if a stage of the current document did not finish. */
+		private boolean partial;
+
+		WatchdogIterator()
+			throws UIMAException, IOException
+		{
+			reader = createReader(readerDesc);
+			stages = new AnalysisEngine[stageDescs.size()];
+			for (int i = 0; i < stages.length; i++) {
+				stages[i] = createEngine(stageDescs.get(i));
+			}
+			resplitter = createEngine(createEngineDescription(SentenceResplitter.class,
+					SentenceResplitter.PARAM_MAX_TOKENS, maxSentenceTokens));
+			consumer = createEngine(consumerDesc);
+
+			metaData.add(reader.getMetaData());
+			for (AnalysisEngine stage : stages) {
+				metaData.add(stage.getMetaData());
+			}
+			metaData.add(resplitter.getMetaData());
+			metaData.add(consumer.getMetaData());
+			jcas = CasCreationUtils.createCas(metaData).getJCas();
+
+			log = logFile != null ? new PrintWriter(new OutputStreamWriter(
+					new FileOutputStream(logFile), "UTF-8"), true) : null;
+			worker = newWorker();
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (pending) {
+				return true;
+			}
+			if (completed) {
+				return false;
+			}
+			try {
+				while (reader.hasNext()) {
+					if (returned) {
+						jcas.reset();
+						returned = false;
+					}
+					reader.getNext(jcas.getCas());
+					if (process()) {
+						boolean consumed = consume();
+						if (partial || !consumed) {
+							degraded++;
+						}
+						if (consumed) {
+							pending = true;
+							return true;
+						}
+					}
+				}
+				complete();
+				return false;
+			}
+			catch (UIMAException e) {
+				throw new UIMARuntimeException(e);
+			}
+			catch (IOException e) {
+				throw new UIMARuntimeException(e);
+			}
+		}
+
+		@Override
+		public JCas next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			pending = false;
+			returned = true;
+			return jcas;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Run the stages on the current document. Return false if the
+		 * document has been abandoned.
+		 */
+		private boolean process()
+			throws UIMAException
+		{
+			long start = System.nanoTime();
+			boolean resplit = false;
+			boolean ok = true;
+
+			for (int i = 0; i < stages.length; i++) {
+				long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				long budget = documentBudgetMillis - elapsed;
+				if (budget <= 0) {
+					record(stageNames.get(i), "skipped", 0, 0);
+					ok = false;
+					continue;
+				}
+				int sentences = jcas.getAnnotationIndex(Sentence.type).size();
+				if (sentences > 0) {
+					budget = Math.min(budget, stageBudgetPerSentenceMillis * sentences);
+				}
+
+				int mark = mark();
+				Outcome outcome = runStage(stages[i], budget);
+				long stageMillis = TimeUnit.NANOSECONDS.toMillis(outcome.elapsed);
+				if (outcome.state == State.ABANDONED) {
+					record(stageNames.get(i), "abandoned", stageMillis, budget);
+					abandon(i);
+					degraded++;
+					return false;
+				}
+				if (outcome.state != State.DONE) {
+					record(stageNames.get(i), outcome.state == State.TIMEOUT ? "timeout" : "error",
+							stageMillis, budget);
+					rollback(mark);
+					ok = false;
+				}
+
+				// Re-split the runaway sentences as soon as they appear.
+				if (!resplit && jcas.getAnnotationIndex(Sentence.type).size() > 0) {
+					Map<Sentence, List<Token>> longSentences = SentenceResplitter.longSentences(
+							jcas, maxSentenceTokens);
+					for (Sentence sentence : longSentences.keySet()) {
+						record(SentenceResplitter.class.getSimpleName(), "resplit",
+								longSentences.get(sentence).size(), sentence.getBegin());
+					}
+					resplitter.process(jcas);
+					resplit = true;
+				}
+			}
+
+			partial = !ok;
+			return true;
+		}
+
+		/**
+		 * Run the consumer on the current document. Return false, leaving
+		 * the CAS empty, if it failed.
+		 */
+		private boolean consume() {
+			long start = System.nanoTime();
+			try {
+				consumer.process(jcas);
+				return true;
+			}
+			catch (AnalysisEngineProcessException e) {
+				// handled below
+			}
+			catch (RuntimeException e) {
+				// handled below
+			}
+			record(stageName(consumerDesc), "error",
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), 0);
+			jcas.reset();
+			return false;
+		}
+
+		/**
+		 * Return the heap address the next feature structure will be
+		 * created at: the ones created from now on have greater addresses.
+		 */
+		private int mark() {
+			return jcas.getCasImpl().getHeap().getNextId();
+		}
+
+		/**
+		 * Undo the work of a stage that did not finish: remove from the
+		 * indexes the feature structures created since the mark, and clear
+		 * the references to them from the older ones (e.g. Token.pos).
+		 */
+		private void rollback(int mark) {
+			LowLevelCAS ll = jcas.getLowLevelCas();
+			List<FeatureStructure> created = new ArrayList<FeatureStructure>();
+			List<FeatureStructure> older = new ArrayList<FeatureStructure>();
+			FSIterator<FeatureStructure> it = jcas.getFSIndexRepository().getAllIndexedFS(
+					jcas.getCasType(TOP.type));
+			while (it.hasNext()) {
+				FeatureStructure fs = it.next();
+				(ll.ll_getFSRef(fs) >= mark ? created : older).add(fs);
+			}
+
+			for (FeatureStructure fs : created) {
+				jcas.removeFsFromIndexes(fs);
+			}
+			for (FeatureStructure fs : older) {
+				for (Feature feature : fs.getType().getFeatures()) {
+					if (feature.getRange().isPrimitive()) {
+						continue;
+					}
+					FeatureStructure value = fs.getFeatureValue(feature);
+					if (value != null && ll.ll_getFSRef(value) >= mark) {
+						fs.setFeatureValue(feature, null);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Run a stage on the worker thread and wait at most budget ms.
+		 */
+		private Outcome runStage(final AnalysisEngine stage, long budget) {
+			final JCas target = jcas;
+			final CountDownLatch finished = new CountDownLatch(1);
+			Future<Void> future = worker.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					try {
+						stage.process(target);
+						return null;
+					}
+					finally {
+						finished.countDown();
+					}
+				}
+			});
+
+			Outcome outcome = new Outcome();
+			long start = System.nanoTime();
+			try {
+				future.get(budget, TimeUnit.MILLISECONDS);
+				outcome.state = State.DONE;
+			}
+			catch (TimeoutException e) {
+				future.cancel(true);
+				outcome.state = State.TIMEOUT;
+				try {
+					if (!finished.await(GRACE_MILLIS, TimeUnit.MILLISECONDS)) {
+						outcome.state = State.ABANDONED;
+					}
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					outcome.state = State.ABANDONED;
+				}
+			}
+			catch (ExecutionException e) {
+				outcome.state = State.ERROR;
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				future.cancel(true);
+				outcome.state = State.ABANDONED;
+			}
+			outcome.elapsed = System.nanoTime() - start;
+			return outcome;
+		}
+
+		/**
+		 * Leave the runaway stage its thread, engine and CAS, and replace them.
+		 */
+		private void abandon(int stage)
+			throws UIMAException
+		{
+			abandoned++;
+			worker.shutdownNow();
+			worker = newWorker();
+			stages[stage] = createEngine(stageDescs.get(stage));
+			jcas = CasCreationUtils.createCas(metaData).getJCas();
+			returned = false;
+		}
+
+		private void complete()
+			throws UIMAException
+		{
+			completed = true;
+			try {
+				LifeCycleUtil.collectionProcessComplete(stages);
+				LifeCycleUtil.collectionProcessComplete(consumer);
+			}
+			finally {
+				worker.shutdownNow();
+				LifeCycleUtil.close(reader);
+				LifeCycleUtil.destroy(reader);
+				LifeCycleUtil.destroy(stages);
+				LifeCycleUtil.destroy(resplitter, consumer);
+				if (log != null) {
+					log.close();
+				}
+			}
+			if (degraded > 0) {
+				System.err.printf("Watchdog: %d documents degraded, %d abandoned%n", degraded,
+						abandoned);
+			}
+		}
+
+		/**
+		 * Log an action. For a re-split, elapsed and budget stand for the
+		 * number of tokens and the offset of the sentence.
+		 */
+		private void record(String stage, String action, long elapsed, long budget) {
+			if (log != null) {
+				log.printf("%s\t%s\t%s\t%d\t%d%n", documentId(), stage, action, elapsed, budget);
+			}
+		}
+
+		private String documentId() {
+			try {
+				return DocumentMetaData.get(jcas).getDocumentId();
+			}
+			catch (IllegalArgumentException e) {
+				return "-";
+			}
+		}
+	}
+
+	private static ExecutorService newWorker() {
+		return Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				// abandoned workers must not keep the JVM alive
+				Thread thread = new Thread(r, "WatchdogWorker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	private static enum State { DONE, TIMEOUT, ERROR, ABANDONED }
+
+	/** Result of running a stage. */
+	private static final class Outcome
+	{
+		State state;
+		long elapsed;
+	}
+}
@@ -98,6 +98,9 @@ public class ConllWriter
     @ConfigurationParameter(name = PARAM_FILENAME_SUFFIX, mandatory = true, defaultValue = ".conll")
     private String filenameSuffix;
 
+    /** Written in place of a lemma or a POS tag that is missing. */
+    private static final String MISSING = "_";
+
     @Override
     public void process(JCas aJCas)
         throws AnalysisEngineProcessException
@@ -156,7 +159,9 @@ public class ConllWriter
                 
                 // Named-entity chunks in IOB format
                 row.ne = encoder.encode(tokens.get(i));
-                row.pos = poss.get(i);
+                
+                // POS (missing if the tagger did not run on the document)
+                row.pos = i < poss.size() ? poss.get(i) : null;
                 
                 // Add token information to the ctokens map
                 ctokens.put(row.token, row);
@@ -164,7 +169,9 @@ public class ConllWriter
             
             // Write sentence in CONLL format
             for (Row row : ctokens.values()) {                
-                aOut.printf("%d %s %s %s %s\n", row.id, row.token.getCoveredText(), row.lemma.getValue(), row.pos.getPosValue(), row.ne);
+                aOut.printf("%d %s %s %s %s\n", row.id, row.token.getCoveredText(), 
+                		row.lemma != null ? row.lemma.getValue() : MISSING, 
+                		row.pos != null ? row.pos.getPosValue() : MISSING, row.ne);
             }
 
             aOut.println();